@@ -0,0 +1,37 @@
+package sriracha.math.interfaces;
+
+/**
+ * LU decomposition (with partial pivoting) of a square complex matrix.
+ * Once computed, the factors can be reused to solve any number of
+ * right hand sides at the cost of a forward and a back substitution.
+ */
+public interface IComplexLUDecomposition {
+
+    /**
+     * Solve A*x = b using the stored factors of A.
+     * @param b right hand side vector.
+     * @return the solution vector x.
+     */
+    public IComplexVector solve(IComplexVector b);
+
+    /**
+     * Solve A*X = B using the stored factors of A, all the columns of B
+     * in a single pass over the factors.
+     * @param b right hand side matrix, with as many rows as A.
+     * @return the solution matrix X.
+     */
+    public IComplexMatrix solve(IComplexMatrix b);
+
+    /**
+     * Solve conjugate(transpose(A))*x = b using the stored factors of A, without
+     * forming or decomposing the conjugate transposed matrix.
+     * @param b right hand side vector.
+     * @return the solution vector x.
+     */
+    public IComplexVector solveConjugateTranspose(IComplexVector b);
+
+    /**
+     * @return the dimension of the decomposed matrix.
+     */
+    public int getDimension();
+}
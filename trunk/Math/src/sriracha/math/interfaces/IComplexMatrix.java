@@ -22,6 +22,14 @@ public interface IComplexMatrix extends IMatrix{
     @Override
     public IComplexVector solve(IVector vector);
 
+    /**
+     * Compute the LU decomposition of this matrix.  The decomposition is independent
+     * of this matrix: later changes to the matrix do not affect it.
+     * @return the decomposition, reusable for any number of solves.
+     * @throws ArithmeticException if the matrix is not square or is singular.
+     */
+    public IComplexLUDecomposition luDecompose();
+
     /**
      * Get the matrix's maximum complex value according to magnitude of the
      * complex number.
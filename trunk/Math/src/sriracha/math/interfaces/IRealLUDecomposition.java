@@ -0,0 +1,29 @@
+package sriracha.math.interfaces;
+
+/**
+ * LU decomposition (with partial pivoting) of a square real matrix.
+ * Once computed, the factors can be reused to solve any number of
+ * right hand sides at the cost of a forward and a back substitution.
+ */
+public interface IRealLUDecomposition {
+
+    /**
+     * Solve A*x = b using the stored factors of A.
+     * @param b right hand side vector.
+     * @return the solution vector x.
+     */
+    public IRealVector solve(IRealVector b);
+
+    /**
+     * Solve transpose(A)*x = b using the stored factors of A, without forming
+     * or decomposing the transposed matrix.
+     * @param b right hand side vector.
+     * @return the solution vector x.
+     */
+    public IRealVector solveTranspose(IRealVector b);
+
+    /**
+     * @return the dimension of the decomposed matrix.
+     */
+    public int getDimension();
+}
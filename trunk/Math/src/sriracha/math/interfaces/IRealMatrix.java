@@ -37,6 +37,14 @@ public interface IRealMatrix extends IMatrix
 
     public IComplexVector solve(IComplexVector vector);
 
+    /**
+     * Compute the LU decomposition of this matrix.  The decomposition is independent
+     * of this matrix: later changes to the matrix do not affect it.
+     * @return the decomposition, reusable for any number of solves.
+     * @throws ArithmeticException if the matrix is not square or is singular.
+     */
+    public IRealLUDecomposition luDecompose();
+
     /**
      * Set all values in the matrix to 0.
      */
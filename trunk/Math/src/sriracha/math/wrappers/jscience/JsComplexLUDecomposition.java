@@ -0,0 +1,310 @@
+package sriracha.math.wrappers.jscience;
+
+import org.jscience.mathematics.number.Complex;
+import org.jscience.mathematics.vector.ComplexMatrix;
+import sriracha.math.interfaces.IComplex;
+import sriracha.math.interfaces.IComplexLUDecomposition;
+import sriracha.math.interfaces.IComplexMatrix;
+import sriracha.math.interfaces.IComplexVector;
+
+/**
+ * LU decomposition of a JsComplexMatrix.  The factors are kept as primitive
+ * doubles, real and imaginary parts in separate arrays, both L (unit diagonal,
+ * below the diagonal) and U share the same pair of arrays.
+ */
+class JsComplexLUDecomposition implements IComplexLUDecomposition
+{
+
+    private double[][] re;
+
+    private double[][] im;
+
+    /**
+     * row permutation, row i of the factors is row pivot[i] of the original matrix.
+     */
+    private int[] pivot;
+
+    private int n;
+
+    JsComplexLUDecomposition(ComplexMatrix matrix)
+    {
+        n = matrix.getNumberOfRows();
+        if (n != matrix.getNumberOfColumns())
+            throw new ArithmeticException("LU decomposition requires a square matrix.");
+
+        re = new double[n][n];
+        im = new double[n][n];
+        pivot = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            pivot[i] = i;
+            for (int j = 0; j < n; j++)
+            {
+                Complex value = matrix.get(i, j);
+                re[i][j] = value.getReal();
+                im[i][j] = value.getImaginary();
+            }
+        }
+
+        decompose();
+    }
+
+    /**
+     * Doolittle elimination with partial pivoting, done in place.
+     * Pivots are chosen on |re| + |im|, which avoids a square root per entry.
+     */
+    private void decompose()
+    {
+        for (int k = 0; k < n; k++)
+        {
+            int p = k;
+            double max = Math.abs(re[k][k]) + Math.abs(im[k][k]);
+            for (int i = k + 1; i < n; i++)
+            {
+                double size = Math.abs(re[i][k]) + Math.abs(im[i][k]);
+                if (size > max)
+                {
+                    max = size;
+                    p = i;
+                }
+            }
+
+            if (max == 0)
+                throw new ArithmeticException("Singular matrix, no pivot found in column " + k);
+
+            if (p != k)
+            {
+                double[] row = re[p];
+                re[p] = re[k];
+                re[k] = row;
+                row = im[p];
+                im[p] = im[k];
+                im[k] = row;
+                int index = pivot[p];
+                pivot[p] = pivot[k];
+                pivot[k] = index;
+            }
+
+            double[] reK = re[k];
+            double[] imK = im[k];
+            double norm = reK[k] * reK[k] + imK[k] * imK[k];
+            for (int i = k + 1; i < n; i++)
+            {
+                double[] reI = re[i];
+                double[] imI = im[i];
+                if (reI[k] == 0 && imI[k] == 0) continue;
+
+                //factor = a(i,k) / a(k,k)
+                double fRe = (reI[k] * reK[k] + imI[k] * imK[k]) / norm;
+                double fIm = (imI[k] * reK[k] - reI[k] * imK[k]) / norm;
+                reI[k] = fRe;
+                imI[k] = fIm;
+                for (int j = k + 1; j < n; j++)
+                {
+                    reI[j] -= fRe * reK[j] - fIm * imK[j];
+                    imI[j] -= fRe * imK[j] + fIm * reK[j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public IComplexVector solve(IComplexVector b)
+    {
+        double[] xRe = new double[n];
+        double[] xIm = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            xRe[i] = b.getValue(pivot[i]).getReal();
+            xIm[i] = b.getValue(pivot[i]).getImag();
+        }
+
+        //forward substitution, L has a unit diagonal
+        for (int i = 0; i < n; i++)
+        {
+            double[] rowRe = re[i];
+            double[] rowIm = im[i];
+            double sumRe = xRe[i];
+            double sumIm = xIm[i];
+            for (int j = 0; j < i; j++)
+            {
+                sumRe -= rowRe[j] * xRe[j] - rowIm[j] * xIm[j];
+                sumIm -= rowRe[j] * xIm[j] + rowIm[j] * xRe[j];
+            }
+            xRe[i] = sumRe;
+            xIm[i] = sumIm;
+        }
+
+        //back substitution
+        for (int i = n - 1; i >= 0; i--)
+        {
+            double[] rowRe = re[i];
+            double[] rowIm = im[i];
+            double sumRe = xRe[i];
+            double sumIm = xIm[i];
+            for (int j = i + 1; j < n; j++)
+            {
+                sumRe -= rowRe[j] * xRe[j] - rowIm[j] * xIm[j];
+                sumIm -= rowRe[j] * xIm[j] + rowIm[j] * xRe[j];
+            }
+            double norm = rowRe[i] * rowRe[i] + rowIm[i] * rowIm[i];
+            xRe[i] = (sumRe * rowRe[i] + sumIm * rowIm[i]) / norm;
+            xIm[i] = (sumIm * rowRe[i] - sumRe * rowIm[i]) / norm;
+        }
+
+        return buildVector(xRe, xIm, null);
+    }
+
+    /**
+     * Same substitutions as for a single vector, each step being applied to a whole
+     * row of right hand sides.
+     */
+    @Override
+    public IComplexMatrix solve(IComplexMatrix b)
+    {
+        if (b.getNumberOfRows() != n)
+            throw new ArithmeticException("Right hand side has " + b.getNumberOfRows() + " rows, expected " + n);
+
+        int m = b.getNumberOfColumns();
+        double[][] xRe = new double[n][m];
+        double[][] xIm = new double[n][m];
+        for (int i = 0; i < n; i++)
+        {
+            for (int k = 0; k < m; k++)
+            {
+                IComplex value = b.getValue(pivot[i], k);
+                xRe[i][k] = value.getReal();
+                xIm[i][k] = value.getImag();
+            }
+        }
+
+        //forward substitution, L has a unit diagonal
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < i; j++)
+            {
+                double lRe = re[i][j];
+                double lIm = im[i][j];
+                if (lRe == 0 && lIm == 0) continue;
+                subtractRow(xRe[i], xIm[i], lRe, lIm, xRe[j], xIm[j]);
+            }
+        }
+
+        //back substitution
+        for (int i = n - 1; i >= 0; i--)
+        {
+            for (int j = i + 1; j < n; j++)
+            {
+                double uRe = re[i][j];
+                double uIm = im[i][j];
+                if (uRe == 0 && uIm == 0) continue;
+                subtractRow(xRe[i], xIm[i], uRe, uIm, xRe[j], xIm[j]);
+            }
+            double norm = re[i][i] * re[i][i] + im[i][i] * im[i][i];
+            double[] rowRe = xRe[i];
+            double[] rowIm = xIm[i];
+            for (int k = 0; k < m; k++)
+            {
+                double sumRe = rowRe[k];
+                double sumIm = rowIm[k];
+                rowRe[k] = (sumRe * re[i][i] + sumIm * im[i][i]) / norm;
+                rowIm[k] = (sumIm * re[i][i] - sumRe * im[i][i]) / norm;
+            }
+        }
+
+        Complex[][] x = new Complex[n][m];
+        for (int i = 0; i < n; i++)
+        {
+            for (int k = 0; k < m; k++)
+            {
+                x[i][k] = Complex.valueOf(xRe[i][k], xIm[i][k]);
+            }
+        }
+        return new JsComplexMatrix(ComplexMatrix.valueOf(x));
+    }
+
+    /**
+     * row -= factor * source, on complex rows.
+     */
+    private static void subtractRow(double[] rowRe, double[] rowIm, double fRe, double fIm,
+                                    double[] sourceRe, double[] sourceIm)
+    {
+        for (int k = 0; k < rowRe.length; k++)
+        {
+            rowRe[k] -= fRe * sourceRe[k] - fIm * sourceIm[k];
+            rowIm[k] -= fRe * sourceIm[k] + fIm * sourceRe[k];
+        }
+    }
+
+    /**
+     * With P*A = L*U, conjugate(transpose(A)) = U'*L'*P, ' being the conjugate
+     * transpose.  Both triangular solves walk the rows of the factors, eliminating
+     * a column at a time, with every factor entry conjugated.
+     */
+    @Override
+    public IComplexVector solveConjugateTranspose(IComplexVector b)
+    {
+        double[] zRe = new double[n];
+        double[] zIm = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            zRe[i] = b.getValue(i).getReal();
+            zIm[i] = b.getValue(i).getImag();
+        }
+
+        //forward substitution with U'
+        for (int i = 0; i < n; i++)
+        {
+            double[] rowRe = re[i];
+            double[] rowIm = im[i];
+            //divide by conjugate(u(i,i))
+            double norm = rowRe[i] * rowRe[i] + rowIm[i] * rowIm[i];
+            double vRe = (zRe[i] * rowRe[i] - zIm[i] * rowIm[i]) / norm;
+            double vIm = (zIm[i] * rowRe[i] + zRe[i] * rowIm[i]) / norm;
+            zRe[i] = vRe;
+            zIm[i] = vIm;
+            if (vRe == 0 && vIm == 0) continue;
+            for (int j = i + 1; j < n; j++)
+            {
+                zRe[j] -= rowRe[j] * vRe + rowIm[j] * vIm;
+                zIm[j] -= rowRe[j] * vIm - rowIm[j] * vRe;
+            }
+        }
+
+        //back substitution with L', unit diagonal
+        for (int i = n - 1; i > 0; i--)
+        {
+            double[] rowRe = re[i];
+            double[] rowIm = im[i];
+            double vRe = zRe[i];
+            double vIm = zIm[i];
+            if (vRe == 0 && vIm == 0) continue;
+            for (int j = 0; j < i; j++)
+            {
+                zRe[j] -= rowRe[j] * vRe + rowIm[j] * vIm;
+                zIm[j] -= rowRe[j] * vIm - rowIm[j] * vRe;
+            }
+        }
+
+        return buildVector(zRe, zIm, pivot);
+    }
+
+    /**
+     * @param order if not null, entry i is stored at index order[i].
+     */
+    private JsComplexVector buildVector(double[] xRe, double[] xIm, int[] order)
+    {
+        JsComplexVector x = new JsComplexVector(n);
+        for (int i = 0; i < n; i++)
+        {
+            x.setValue(order == null ? i : order[i], xRe[i], xIm[i]);
+        }
+        return x;
+    }
+
+    @Override
+    public int getDimension()
+    {
+        return n;
+    }
+}
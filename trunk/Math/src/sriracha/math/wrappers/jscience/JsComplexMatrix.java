@@ -89,6 +89,12 @@ class JsComplexMatrix extends JsMatrix implements IComplexMatrix
         }
     }
 
+    @Override
+    public IComplexLUDecomposition luDecompose()
+    {
+        return new JsComplexLUDecomposition(getMatrix());
+    }
+
     @Override
     public IComplex getMax() {
         ComplexMatrix myMat = (ComplexMatrix) matrix;
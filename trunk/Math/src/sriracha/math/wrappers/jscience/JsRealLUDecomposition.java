@@ -0,0 +1,178 @@
+package sriracha.math.wrappers.jscience;
+
+import org.jscience.mathematics.vector.Float64Matrix;
+import org.jscience.mathematics.vector.Float64Vector;
+import sriracha.math.interfaces.IRealLUDecomposition;
+import sriracha.math.interfaces.IRealVector;
+
+/**
+ * LU decomposition of a JsRealMatrix.  The factors are kept as primitive
+ * doubles, both L (unit diagonal, below the diagonal) and U share the same array.
+ */
+class JsRealLUDecomposition implements IRealLUDecomposition
+{
+
+    private double[][] lu;
+
+    /**
+     * row permutation, row i of the factors is row pivot[i] of the original matrix.
+     */
+    private int[] pivot;
+
+    private int n;
+
+    JsRealLUDecomposition(Float64Matrix matrix)
+    {
+        n = matrix.getNumberOfRows();
+        if (n != matrix.getNumberOfColumns())
+            throw new ArithmeticException("LU decomposition requires a square matrix.");
+
+        lu = new double[n][n];
+        pivot = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            pivot[i] = i;
+            for (int j = 0; j < n; j++)
+            {
+                lu[i][j] = matrix.get(i, j).doubleValue();
+            }
+        }
+
+        decompose();
+    }
+
+    /**
+     * Doolittle elimination with partial pivoting, done in place.
+     */
+    private void decompose()
+    {
+        for (int k = 0; k < n; k++)
+        {
+            int p = k;
+            double max = Math.abs(lu[k][k]);
+            for (int i = k + 1; i < n; i++)
+            {
+                if (Math.abs(lu[i][k]) > max)
+                {
+                    max = Math.abs(lu[i][k]);
+                    p = i;
+                }
+            }
+
+            if (max == 0)
+                throw new ArithmeticException("Singular matrix, no pivot found in column " + k);
+
+            if (p != k)
+            {
+                double[] row = lu[p];
+                lu[p] = lu[k];
+                lu[k] = row;
+                int index = pivot[p];
+                pivot[p] = pivot[k];
+                pivot[k] = index;
+            }
+
+            double[] rowK = lu[k];
+            for (int i = k + 1; i < n; i++)
+            {
+                double[] rowI = lu[i];
+                double factor = rowI[k] / rowK[k];
+                rowI[k] = factor;
+                if (factor == 0) continue;
+                for (int j = k + 1; j < n; j++)
+                {
+                    rowI[j] -= factor * rowK[j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public IRealVector solve(IRealVector b)
+    {
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            x[i] = b.getValue(pivot[i]);
+        }
+
+        //forward substitution, L has a unit diagonal
+        for (int i = 0; i < n; i++)
+        {
+            double[] row = lu[i];
+            double sum = x[i];
+            for (int j = 0; j < i; j++)
+            {
+                sum -= row[j] * x[j];
+            }
+            x[i] = sum;
+        }
+
+        //back substitution
+        for (int i = n - 1; i >= 0; i--)
+        {
+            double[] row = lu[i];
+            double sum = x[i];
+            for (int j = i + 1; j < n; j++)
+            {
+                sum -= row[j] * x[j];
+            }
+            x[i] = sum / row[i];
+        }
+
+        return new JsRealVector(Float64Vector.valueOf(x));
+    }
+
+    /**
+     * With P*A = L*U, transpose(A) = transpose(U)*transpose(L)*P.  Both triangular
+     * solves walk the rows of the factors, eliminating a column at a time.
+     */
+    @Override
+    public IRealVector solveTranspose(IRealVector b)
+    {
+        double[] z = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            z[i] = b.getValue(i);
+        }
+
+        //forward substitution with transpose(U)
+        for (int i = 0; i < n; i++)
+        {
+            double[] row = lu[i];
+            double value = z[i] / row[i];
+            z[i] = value;
+            if (value == 0) continue;
+            for (int j = i + 1; j < n; j++)
+            {
+                z[j] -= row[j] * value;
+            }
+        }
+
+        //back substitution with transpose(L), unit diagonal
+        for (int i = n - 1; i > 0; i--)
+        {
+            double[] row = lu[i];
+            double value = z[i];
+            if (value == 0) continue;
+            for (int j = 0; j < i; j++)
+            {
+                z[j] -= row[j] * value;
+            }
+        }
+
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            x[pivot[i]] = z[i];
+        }
+
+        return new JsRealVector(Float64Vector.valueOf(x));
+    }
+
+    @Override
+    public int getDimension()
+    {
+        return n;
+    }
+}
@@ -47,6 +47,13 @@ class JsRealMatrix extends JsMatrix implements IRealMatrix
     }
 
 
+    @Override
+    public IRealLUDecomposition luDecompose()
+    {
+        return new JsRealLUDecomposition(getMatrix());
+    }
+
+
     @Override
     public IVector solve(IVector b)
     {
@@ -14,7 +14,7 @@ public interface ISimulator
      * the results will all be streamed right away.
      *
      * @param netlist
-     * @return true task was completed, false if cancelled
+     * @return true task was completed, false if cancelled or if an analysis failed
      */
     public boolean setNetlist(String netlist);
 
@@ -24,10 +24,19 @@ public interface ISimulator
      * ex.: ".AC LIN 100 1000 2000"
      *
      * @param analysis string representation of analysis spec
-     * @return true if analysis was completed, false if cancelled
+     * @return true if analysis was completed, false if cancelled or if it failed
      */
     public boolean addAnalysis(String analysis);
 
+    /**
+     * Reason the last call to setNetlist or addAnalysis returned false,
+     * for instance a DC operating point that did not converge.
+     *
+     * @return description of the failure, null if the last call did not fail
+     * or was cancelled
+     */
+    public String getFailure();
+
     /**
      * Corresponds to one of spices output specification lines.
      * ex.: ".PLOT V(1) I(Vin) V(5, 4)"
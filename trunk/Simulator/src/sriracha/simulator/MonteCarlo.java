@@ -0,0 +1,126 @@
+package sriracha.simulator;
+
+import sriracha.simulator.parser.CircuitBuilder;
+import sriracha.simulator.parser.ParameterSampling;
+import sriracha.simulator.solver.output.filtering.LimitFilter;
+import sriracha.simulator.solver.output.filtering.OutputFilter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs the analyses of a netlist for every trial of a .MC statement, the distributions
+ * of its parameters drawn from the generator of the trial.
+ *
+ * Trials are split in chunks run on the fork-join pool.  Each chunk runs its trials one
+ * after the other, every trial building and solving its own circuit, and only keeps the
+ * running statistics of the printed quantities; the statistics of the chunks are merged
+ * as the chunks join.  The chunks and the seed of each trial do not depend on the number
+ * of threads, so neither do the results.
+ */
+class MonteCarlo
+{
+    /**
+     * Number of trials below which a chunk is run without being split further.
+     */
+    public static final int STD_PARALLEL_CHUNK = 8;
+
+    private String netlist;
+
+    private ParameterSampling sampling;
+
+    private int printCount;
+
+    private List<LimitFilter> limits;
+
+    /**
+     * @param netlist netlist of the circuit.
+     * @param nominal builder of the nominal circuit of the netlist.
+     */
+    MonteCarlo(String netlist, CircuitBuilder nominal)
+    {
+        this.netlist = netlist;
+        sampling = nominal.getSampling();
+        printCount = nominal.getOutputFilters().size();
+        limits = nominal.getLimitFilters();
+    }
+
+    /**
+     * @return the statistics and histograms of the printed quantities followed by the
+     * histograms of the limits, or null if the simulation was cancelled.
+     */
+    public List<IPrintData> run()
+    {
+        MonteCarloStatistics statistics = Simulator.Pool.invoke(new Chunk(0, sampling.getTrials()));
+        if (statistics == null)
+            return null;
+        return statistics.toPrintData(sampling.toString());
+    }
+
+    /**
+     * Build and simulate the circuit of one trial.
+     *
+     * @param trial      number of the trial.
+     * @param statistics statistics the results are added to.
+     * @return false if the simulation was cancelled.
+     */
+    private boolean runTrial(int trial, MonteCarloStatistics statistics)
+    {
+        CircuitBuilder builder = new CircuitBuilder(netlist, new HashMap<String, Double>(), sampling.randomOf(trial));
+        //Every limit has its analysis, so only prints can be missing from the data.
+        ArrayList<OutputFilter> filters = new ArrayList<OutputFilter>(builder.getOutputFilters());
+        filters.addAll(builder.getLimitFilters());
+        List<IPrintData> data = Simulator.runVariant(builder, filters);
+        if (data == null) return false;
+
+        statistics.addTrial(data.subList(0, printCount), data.subList(printCount, data.size()));
+        return true;
+    }
+
+    /**
+     * Range of trials, split in halves until small enough to be run by a single worker.
+     * The result is the statistics of the range, null if the simulation was cancelled.
+     */
+    private class Chunk extends RecursiveTask<MonteCarloStatistics>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+
+        Chunk(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MonteCarloStatistics compute()
+        {
+            if (to - from <= STD_PARALLEL_CHUNK)
+            {
+                MonteCarloStatistics statistics = new MonteCarloStatistics(printCount, limits, sampling.getBins());
+                for (int trial = from; trial < to; trial++)
+                {
+                    if (Simulator.Instance.isCancelRequested() || !runTrial(trial, statistics))
+                        return null;
+                }
+                return statistics;
+            }
+
+            int middle = (from + to) >>> 1;
+            Chunk left = new Chunk(from, middle);
+            Chunk right = new Chunk(middle, to);
+            left.fork();
+            MonteCarloStatistics statistics = right.compute();
+            MonteCarloStatistics leftStatistics = left.join();
+            if (statistics == null || leftStatistics == null)
+                return null;
+
+            leftStatistics.merge(statistics);
+            return leftStatistics;
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package sriracha.simulator;
+
+import sriracha.simulator.solver.output.FilteredVector;
+import sriracha.simulator.solver.output.PrintData;
+import sriracha.simulator.solver.output.filtering.LimitFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Running statistics of the trials of a Monte Carlo analysis.
+ *
+ * For every quantity of every .PRINT statement, the mean, variance, minimum and maximum
+ * of its values at each point are updated as trials are added (Welford's method), along
+ * with a histogram of its values at each point.  Every .LIMIT counts the trials meeting
+ * it along with a histogram of the values of its quantity between its bounds.  Trials are
+ * not kept: the memory used only depends on the number of printed values.
+ *
+ * The statistics of separate sets of trials are merged exactly, so that trials can be
+ * accumulated by concurrent workers and combined afterwards.
+ */
+class MonteCarloStatistics
+{
+    /**
+     * The bins of the histogram of a printed value are never narrower than its largest
+     * magnitude times 2^-STD_HISTOGRAM_RESOLUTION.
+     */
+    public static final int STD_HISTOGRAM_RESOLUTION = 40;
+
+    private int trials;
+
+    /**
+     * Trials meeting every limit.
+     */
+    private int passed;
+
+    private Moments[] moments;
+
+    private Histogram[] histograms;
+
+    /**
+     * @param printCount number of .PRINT statements.
+     * @param limits     .LIMIT bounds.
+     * @param bins       number of bins of the histogram of each printed value, and
+     *                   between the bounds of each limit.
+     */
+    MonteCarloStatistics(int printCount, List<LimitFilter> limits, int bins)
+    {
+        moments = new Moments[printCount];
+        for (int i = 0; i < printCount; i++)
+            moments[i] = new Moments(bins);
+
+        histograms = new Histogram[limits.size()];
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new Histogram(limits.get(i), bins);
+    }
+
+    /**
+     * Add the results of a trial.
+     *
+     * @param prints results of the .PRINT statements, null for those without results.
+     * @param limits values of the quantity of each .LIMIT.
+     */
+    public void addTrial(List<IPrintData> prints, List<IPrintData> limits)
+    {
+        trials++;
+        for (int i = 0; i < moments.length; i++)
+        {
+            if (prints.get(i) != null)
+                moments[i].add(prints.get(i));
+        }
+
+        boolean pass = true;
+        for (int i = 0; i < histograms.length; i++)
+            pass &= histograms[i].add(limits.get(i));
+        if (pass)
+            passed++;
+    }
+
+    /**
+     * Add the trials of other statistics to these.
+     *
+     * @param other statistics of other trials of the same netlist.
+     */
+    public void merge(MonteCarloStatistics other)
+    {
+        trials += other.trials;
+        passed += other.passed;
+        for (int i = 0; i < moments.length; i++)
+            moments[i].merge(other.moments[i]);
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i].merge(other.histograms[i]);
+    }
+
+    /**
+     * @param title first part of the title of the statistics of each .PRINT statement.
+     * @return the statistics and then the histograms of every .PRINT statement, followed
+     * by the histogram of every limit.
+     */
+    public List<IPrintData> toPrintData(String title)
+    {
+        if (histograms.length > 0)
+            title += ", YIELD " + share(passed, trials);
+
+        ArrayList<IPrintData> data = new ArrayList<IPrintData>();
+        for (Moments m : moments)
+        {
+            if (m.count > 0)
+            {
+                data.add(m.toPrintData(title));
+                data.add(m.histogramsToPrintData(title));
+            }
+        }
+        for (Histogram h : histograms)
+            data.add(h.toPrintData(trials));
+        return data;
+    }
+
+    private static String share(int count, int total)
+    {
+        return count + "/" + total + " (" + String.format("%.2f", 100.0 * count / total) + "%)";
+    }
+
+    /**
+     * Running moments and histograms of the values of one .PRINT statement, at every
+     * point and for every entry of the printed vectors.
+     */
+    private static class Moments
+    {
+        private int bins;
+
+        private int count;
+
+        private List<String> labels;
+
+        private double[] x;
+
+        /**
+         * Number of entries of each printed quantity, 2 for complex values.
+         */
+        private int[] widths;
+
+        //Indexed by point, then by entry of the unrolled vector
+        private double[][] mean;
+        private double[][] m2;
+        private double[][] min;
+        private double[][] max;
+        private ValueHistogram[][] histograms;
+
+        private Moments(int bins)
+        {
+            this.bins = bins;
+        }
+
+        private void add(IPrintData data)
+        {
+            List<IDataPoint> points = data.getData();
+            if (count == 0)
+                initialize(data);
+            else
+                checkPoints(xValues(points));
+
+            count++;
+            for (int p = 0; p < x.length; p++)
+            {
+                int k = 0;
+                for (double[] values : points.get(p).getVector())
+                {
+                    for (double value : values)
+                    {
+                        double delta = value - mean[p][k];
+                        mean[p][k] += delta / count;
+                        m2[p][k] += delta * (value - mean[p][k]);
+                        min[p][k] = Math.min(min[p][k], value);
+                        max[p][k] = Math.max(max[p][k], value);
+                        histograms[p][k].add(value);
+                        k++;
+                    }
+                }
+            }
+        }
+
+        private void initialize(IPrintData data)
+        {
+            List<IDataPoint> points = data.getData();
+            labels = new ArrayList<String>(data.getLabels());
+            x = xValues(points);
+
+            int length = 0;
+            widths = new int[0];
+            if (points.size() > 0)
+            {
+                double[][] vector = points.get(0).getVector();
+                widths = new int[vector.length];
+                for (int i = 0; i < vector.length; i++)
+                    widths[i] = vector[i].length;
+                length = points.get(0).totalVectorLength();
+            }
+
+            mean = new double[x.length][length];
+            m2 = new double[x.length][length];
+            min = new double[x.length][length];
+            max = new double[x.length][length];
+            histograms = new ValueHistogram[x.length][length];
+            for (int p = 0; p < x.length; p++)
+            {
+                for (int k = 0; k < length; k++)
+                {
+                    min[p][k] = Double.POSITIVE_INFINITY;
+                    max[p][k] = Double.NEGATIVE_INFINITY;
+                    histograms[p][k] = new ValueHistogram(bins);
+                }
+            }
+        }
+
+        /**
+         * The statistics of a point only make sense if every trial has it.
+         */
+        private void checkPoints(double[] otherX)
+        {
+            boolean same = otherX.length == x.length;
+            for (int p = 0; same && p < x.length; p++)
+                same = Math.abs(otherX[p] - x[p]) <= 1e-9 * Math.max(Math.abs(otherX[p]), Math.abs(x[p]));
+            if (!same)
+                throw new UnsupportedOperationException("Monte Carlo statistics need the same points in " +
+                        "every trial, adaptive AC sweeps are not supported.");
+        }
+
+        /**
+         * Chan's pairwise combination of the moments of two sets of trials.
+         */
+        private void merge(Moments other)
+        {
+            if (other.count == 0) return;
+            if (count == 0)
+            {
+                count = other.count;
+                labels = other.labels;
+                x = other.x;
+                widths = other.widths;
+                mean = other.mean;
+                m2 = other.m2;
+                min = other.min;
+                max = other.max;
+                histograms = other.histograms;
+                return;
+            }
+
+            checkPoints(other.x);
+            double total = count + other.count;
+            for (int p = 0; p < x.length; p++)
+            {
+                for (int k = 0; k < mean[p].length; k++)
+                {
+                    double delta = other.mean[p][k] - mean[p][k];
+                    mean[p][k] += delta * other.count / total;
+                    m2[p][k] += other.m2[p][k] + delta * delta * count * other.count / total;
+                    min[p][k] = Math.min(min[p][k], other.min[p][k]);
+                    max[p][k] = Math.max(max[p][k], other.max[p][k]);
+                    histograms[p][k].merge(other.histograms[p][k]);
+                }
+            }
+            count += other.count;
+        }
+
+        private PrintData toPrintData(String title)
+        {
+            PrintData data = new PrintData();
+            data.setTitle(title);
+            data.addLabel(labels.get(0));
+            for (int i = 1; i < labels.size(); i++)
+            {
+                data.addLabel("MEAN(" + labels.get(i) + ")");
+                data.addLabel("SIGMA(" + labels.get(i) + ")");
+                data.addLabel("MIN(" + labels.get(i) + ")");
+                data.addLabel("MAX(" + labels.get(i) + ")");
+            }
+
+            for (int p = 0; p < x.length; p++)
+            {
+                FilteredVector vector = new FilteredVector(4 * widths.length);
+                vector.setX(x[p]);
+                int k = 0;
+                for (int i = 0; i < widths.length; i++)
+                {
+                    double[] meanValue = new double[widths[i]];
+                    double[] sigmaValue = new double[widths[i]];
+                    double[] minValue = new double[widths[i]];
+                    double[] maxValue = new double[widths[i]];
+                    for (int j = 0; j < widths[i]; j++, k++)
+                    {
+                        meanValue[j] = mean[p][k];
+                        sigmaValue[j] = count > 1 ? Math.sqrt(m2[p][k] / (count - 1)) : 0;
+                        minValue[j] = min[p][k];
+                        maxValue[j] = max[p][k];
+                    }
+                    vector.put(4 * i, meanValue);
+                    vector.put(4 * i + 1, sigmaValue);
+                    vector.put(4 * i + 2, minValue);
+                    vector.put(4 * i + 3, maxValue);
+                }
+                data.addResult(vector);
+            }
+            return data;
+        }
+
+        /**
+         * For every printed quantity, the lower end of its first bin, the width of its
+         * bins, and the count of each bin.
+         */
+        private PrintData histogramsToPrintData(String title)
+        {
+            PrintData data = new PrintData();
+            data.setTitle(title + ", HISTOGRAMS");
+            data.addLabel(labels.get(0));
+            for (int i = 1; i < labels.size(); i++)
+            {
+                data.addLabel("LOW(" + labels.get(i) + ")");
+                data.addLabel("BIN(" + labels.get(i) + ")");
+                for (int b = 1; b <= bins; b++)
+                    data.addLabel("N" + b + "(" + labels.get(i) + ")");
+            }
+
+            int columns = bins + 2;
+            for (int p = 0; p < x.length; p++)
+            {
+                FilteredVector vector = new FilteredVector(columns * widths.length);
+                vector.setX(x[p]);
+                int k = 0;
+                for (int i = 0; i < widths.length; i++)
+                {
+                    double[][] values = new double[columns][widths[i]];
+                    for (int j = 0; j < widths[i]; j++, k++)
+                    {
+                        ValueHistogram h = histograms[p][k];
+                        values[0][j] = h.getLow();
+                        values[1][j] = h.getWidth();
+                        for (int b = 0; b < bins; b++)
+                            values[b + 2][j] = h.counts[b];
+                    }
+                    for (int c = 0; c < columns; c++)
+                        vector.put(columns * i + c, values[c]);
+                }
+                data.addResult(vector);
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Histogram of the values of one entry of a printed vector at one point, built without
+     * knowing their range in advance.
+     *
+     * The bins are 2^exponent wide and start at multiples of their width, the exponent being
+     * the smallest for which the values seen so far fit in the bins (and at least the
+     * resolution given by STD_HISTOGRAM_RESOLUTION).  As the range of the values grows, the
+     * bins are coarsened by merging them: bins of a power of two width nest in those of
+     * every larger power of two, so the counts stay exact.  The bins only depend on the
+     * values seen, not on their order, and so merging the histograms of separate sets of
+     * trials gives the histogram of all of them.  Values that are not finite are not
+     * counted.
+     */
+    private static class ValueHistogram
+    {
+        private int[] counts;
+
+        private boolean empty = true;
+
+        //Smallest and largest value counted
+        private double low;
+        private double high;
+
+        private int exponent;
+
+        /**
+         * Index of the first bin, the bin of value v being floor(v / 2^exponent).
+         */
+        private long first;
+
+        private ValueHistogram(int bins)
+        {
+            counts = new int[bins];
+        }
+
+        private void add(double value)
+        {
+            if (Double.isNaN(value) || Double.isInfinite(value)) return;
+
+            if (empty)
+                fit(value, value);
+            else if (value < low || value > high)
+                fit(Math.min(low, value), Math.max(high, value));
+            counts[(int) (index(value, exponent) - first)]++;
+        }
+
+        private void merge(ValueHistogram other)
+        {
+            if (other.empty) return;
+
+            if (empty)
+                fit(other.low, other.high);
+            else
+                fit(Math.min(low, other.low), Math.max(high, other.high));
+            for (int b = 0; b < other.counts.length; b++)
+            {
+                if (other.counts[b] > 0)
+                    counts[(int) (coarser(other.first + b, exponent - other.exponent) - first)] += other.counts[b];
+            }
+        }
+
+        /**
+         * Widen the bins to the range [newLow, newHigh], which contains the present one.
+         */
+        private void fit(double newLow, double newHigh)
+        {
+            int e = Math.getExponent(Math.max(Math.abs(newLow), Math.abs(newHigh))) - STD_HISTOGRAM_RESOLUTION;
+            if (!empty)
+                e = Math.max(e, exponent);
+            while (index(newHigh, e) - index(newLow, e) >= counts.length)
+                e++;
+            long newFirst = index(newLow, e);
+
+            if (!empty)
+            {
+                //The bins past the one of the largest value are empty, and may not fit in the new range.
+                int[] newCounts = new int[counts.length];
+                for (int b = 0; b < counts.length; b++)
+                {
+                    if (counts[b] > 0)
+                        newCounts[(int) (coarser(first + b, e - exponent) - newFirst)] += counts[b];
+                }
+                counts = newCounts;
+            }
+
+            low = newLow;
+            high = newHigh;
+            exponent = e;
+            first = newFirst;
+            empty = false;
+        }
+
+        /**
+         * @return the lower end of the first bin, NaN if no value was counted.
+         */
+        private double getLow()
+        {
+            return empty ? Double.NaN : Math.scalb((double) first, exponent);
+        }
+
+        /**
+         * @return the width of the bins, 0 if no value was counted.
+         */
+        private double getWidth()
+        {
+            return empty ? 0 : Math.scalb(1.0, exponent);
+        }
+
+        private static long index(double value, int exponent)
+        {
+            return (long) Math.floor(Math.scalb(value, -exponent));
+        }
+
+        /**
+         * @return the index of the bin 2^shift times as wide containing the given bin.
+         */
+        private static long coarser(long index, int shift)
+        {
+            if (shift >= Long.SIZE - 1)
+                return index < 0 ? -1 : 0;
+            return index >> shift;
+        }
+    }
+
+    private static double[] xValues(List<IDataPoint> points)
+    {
+        double[] x = new double[points.size()];
+        for (int p = 0; p < x.length; p++)
+            x[p] = points.get(p).getXValue();
+        return x;
+    }
+
+    /**
+     * Trials meeting a limit and histogram of the values of its quantity, each point
+     * of each trial counting once.
+     */
+    private static class Histogram
+    {
+        private LimitFilter limit;
+
+        private int passed;
+
+        private int[] counts;
+
+        private int below;
+
+        private int above;
+
+        private Histogram(LimitFilter limit, int bins)
+        {
+            this.limit = limit;
+            counts = new int[bins];
+        }
+
+        /**
+         * @return true if the trial meets the limit.
+         */
+        private boolean add(IPrintData data)
+        {
+            boolean pass = true;
+            double width = limit.getUpper() - limit.getLower();
+            for (IDataPoint point : data.getData())
+            {
+                double value = point.getVector()[0][0];
+                if (value < limit.getLower())
+                    below++;
+                else if (value > limit.getUpper())
+                    above++;
+                else
+                {
+                    int bin = width > 0 ? (int) ((value - limit.getLower()) / width * counts.length) : 0;
+                    counts[Math.min(bin, counts.length - 1)]++;
+                }
+                pass &= limit.accepts(value);
+            }
+            if (pass)
+                passed++;
+            return pass;
+        }
+
+        private void merge(Histogram other)
+        {
+            passed += other.passed;
+            below += other.below;
+            above += other.above;
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += other.counts[i];
+        }
+
+        private PrintData toPrintData(int trials)
+        {
+            PrintData data = new PrintData();
+            data.setTitle(limit + ": YIELD " + share(passed, trials) + ", " + below + " POINTS BELOW, "
+                    + above + " ABOVE");
+            data.addLabel(limit.getRequestedInfo().get(0).toString());
+            data.addLabel("count");
+
+            double width = (limit.getUpper() - limit.getLower()) / counts.length;
+            for (int i = 0; i < counts.length; i++)
+            {
+                FilteredVector vector = new FilteredVector(1);
+                vector.setX(limit.getLower() + (i + 0.5) * width);
+                vector.put(0, new double[]{counts[i]});
+                data.addResult(vector);
+            }
+            return data;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package sriracha.simulator;
+
+import sriracha.simulator.parser.CircuitBuilder;
+import sriracha.simulator.parser.ParameterStep;
+import sriracha.simulator.solver.output.PrintData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the analyses of a netlist once for every value of a .STEP parameter.
+ *
+ * Each step rebuilds the whole circuit from the netlist, the stepped parameter
+ * overriding its .PARAM definition, then restamps and solves all of its equations:
+ * nothing is reused between steps, not even for the elements that do not use the
+ * parameter.  Stamping is a small part of a step next to solving, and what the
+ * non-linear solver prepares from the matrix (the condensation of its linear unknowns)
+ * depends on the restamped values anyway.  The variants share no state and are run
+ * concurrently on the fork-join pool.
+ */
+class ParametricSweep
+{
+    private String netlist;
+
+    private ParameterStep step;
+
+    /**
+     * Filtered results of each step, in the order of the .PRINT statements.
+     */
+    private List<List<IPrintData>> families;
+
+    ParametricSweep(String netlist, ParameterStep step)
+    {
+        this.netlist = netlist;
+        this.step = step;
+    }
+
+    /**
+     * @return the results of every step, one family of print data per step in the
+     * order of the step values, or null if the simulation was cancelled.
+     */
+    public List<IPrintData> run()
+    {
+        int count = step.getValues().size();
+        families = new ArrayList<List<IPrintData>>(count);
+        for (int k = 0; k < count; k++)
+            families.add(null);
+
+        Simulator.Pool.invoke(new Chunk(0, count));
+
+        ArrayList<IPrintData> data = new ArrayList<IPrintData>();
+        for (List<IPrintData> family : families)
+        {
+            if (family == null) return null;
+            data.addAll(family);
+        }
+        return data;
+    }
+
+    /**
+     * Build and simulate the circuit of one step.
+     *
+     * @param index index of the step value.
+     */
+    private void runStep(int index)
+    {
+        double value = step.getValues().get(index);
+        HashMap<String, Double> overrides = new HashMap<String, Double>();
+        overrides.put(step.getName(), value);
+
+        CircuitBuilder builder = new CircuitBuilder(netlist, overrides);
+        List<IPrintData> prints = Simulator.runVariant(builder, builder.getOutputFilters());
+        if (prints == null) return;
+
+        ArrayList<IPrintData> family = new ArrayList<IPrintData>();
+        for (IPrintData data : prints)
+        {
+            if (data == null) continue;
+            ((PrintData) data).setTitle(".STEP " + step.getName() + "=" + value);
+            family.add(data);
+        }
+        families.set(index, family);
+    }
+
+    /**
+     * Range of steps, split in halves until a single step is left.
+     */
+    private class Chunk extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+
+        Chunk(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (Simulator.Instance.isCancelRequested()) return;
+
+            if (to - from == 1)
+            {
+                runStep(from);
+                return;
+            }
+            if (to <= from) return;
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(from, middle), new Chunk(middle, to));
+        }
+    }
+}
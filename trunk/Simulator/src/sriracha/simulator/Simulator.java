@@ -3,13 +3,16 @@ package sriracha.simulator;
 import sriracha.simulator.model.Circuit;
 import sriracha.simulator.parser.CircuitBuilder;
 import sriracha.simulator.solver.analysis.Analysis;
+import sriracha.simulator.solver.analysis.AnalysisException;
 import sriracha.simulator.solver.analysis.AnalysisType;
 import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.ac.ACAnalysis;
 import sriracha.simulator.solver.output.filtering.OutputFilter;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Main Class for interaction with the Simulator, abstracts away all the sub-components
@@ -19,8 +22,21 @@ public class Simulator implements ISimulator
 
     public static Simulator Instance = new Simulator();
 
+    /**
+     * Fork-join pool shared by all the parallel work of the simulator: .STEP steps and
+     * .MC trials, noise frequencies, subcircuit blocks and diode batches.  Nested parallel
+     * work (a trial evaluating a large diode batch) runs on the same workers instead of
+     * starting threads of its own.
+     */
+    public static final ForkJoinPool Pool = new ForkJoinPool();
+
     private boolean cancelRequested;
 
+    /**
+     * Reason the last netlist or analysis failed, null if it did not.
+     */
+    private String failure;
+
     private Circuit circuit;
 
     private CircuitBuilder builder;
@@ -31,12 +47,19 @@ public class Simulator implements ISimulator
 
     private HashMap<AnalysisType, IAnalysisResults> results;
 
+    /**
+     * Results of the steps of a .STEP statement, one family per step, or statistics
+     * of the trials of a .MC statement.
+     */
+    private List<IPrintData> sweepResults;
+
 
     private Simulator()
     {
         requestedAnalysis = new ArrayList<Analysis>();
         outputFilters = new ArrayList<OutputFilter>();
         results = new HashMap<AnalysisType, IAnalysisResults>();
+        sweepResults = new ArrayList<IPrintData>();
 
     }
 
@@ -55,7 +78,14 @@ public class Simulator implements ISimulator
 
     private boolean save(Analysis analysis)
     {
-        IAnalysisResults res = analysis.run();
+        IAnalysisResults res;
+        try
+        {
+            res = analysis.run();
+        } catch (AnalysisException e)
+        {
+            return fail(e);
+        }
 
         if (res == null)
         {
@@ -69,6 +99,22 @@ public class Simulator implements ISimulator
 
     }
 
+    /**
+     * Records a failed analysis, reported to the caller by returning false.
+     *
+     * @param e cause of the failure
+     * @return false
+     */
+    private boolean fail(AnalysisException e)
+    {
+        failure = e.getMessage();
+        if (Options.isPrintProgress())
+        {
+            System.out.println(failure);
+        }
+        return false;
+    }
+
     /**
      * Helper method of setNetlist(String netlist) method of Simulator class.
      * Sets a new Circuit, and remakes the this.generator and this.equation Fields.
@@ -97,6 +143,9 @@ public class Simulator implements ISimulator
      * Third: Set up the circuit and assign all the extra variables.
      * Fourth: save all the requested analysis and set the analysis (apply stamps)
      * Fifth: save the outputs.
+     * A netlist with a .STEP statement instead runs its analyses once per step, and
+     * saves the outputs of every step; one with a .MC statement runs them once per
+     * trial, and saves the statistics of the outputs.
      *
      * @param netlist - the text circuit and analysis description
      */
@@ -109,30 +158,130 @@ public class Simulator implements ISimulator
         //Add the extra variables.
         setCircuit(builder.getCircuit());
 
+        if (builder.getStep() != null || builder.getSampling() != null)
+        {
+            List<IPrintData> families;
+            try
+            {
+                if (builder.getStep() != null)
+                    families = new ParametricSweep(netlist, builder.getStep()).run();
+                else
+                    families = new MonteCarlo(netlist, builder).run();
+            } catch (AnalysisException e)
+            {
+                return fail(e);
+            }
+            if (families == null)
+            {
+                cancelRequested = false;
+                return false;
+            }
+            sweepResults.addAll(families);
+            return true;
+        }
+
         //Save analysis objects
         requestedAnalysis.addAll(builder.getAnalysisTypes());
 
         //Set up the analysis objects
-        for (Analysis a : requestedAnalysis)
+        try
         {
-            a.extractSolvingInfo(circuit);
+            for (Analysis a : requestedAnalysis)
+            {
+                a.extractSolvingInfo(circuit);
+            }
+        } catch (AnalysisException e)
+        {
+            return fail(e);
         }
 
         outputFilters.addAll(builder.getOutputFilters());
 
+        //Adaptive AC sweeps refine around the quantities that are going to be printed.
+        for (Analysis a : requestedAnalysis)
+        {
+            if (a instanceof ACAnalysis)
+                addProbes((ACAnalysis) a, outputFilters);
+        }
+
         return saveAll();
     }
 
+    /**
+     * Gives an AC analysis all the quantities requested by the .PRINT AC statements among filters.
+     *
+     * @param analysis target AC analysis
+     * @param filters  .PRINT statements seen so far
+     */
+    private static void addProbes(ACAnalysis analysis, List<OutputFilter> filters)
+    {
+        for (OutputFilter f : filters)
+        {
+            if (f.getAnalysisType() == AnalysisType.AC)
+                analysis.addProbes(f.getRequestedInfo());
+        }
+    }
+
+    /**
+     * Runs the analyses of a variant of the netlist, a step of a .STEP statement or a trial
+     * of a .MC statement, on the circuit of its own builder.
+     *
+     * @param builder builder of the variant
+     * @param filters filters applied to the results, statements of the variant
+     * @return the data of each filter in order, null for a filter whose analysis has no
+     * results, or null if the simulation was cancelled.
+     */
+    static List<IPrintData> runVariant(CircuitBuilder builder, List<? extends OutputFilter> filters)
+    {
+        Circuit circuit = builder.getCircuit();
+        circuit.assignAdditionalVarIndices();
+
+        HashMap<AnalysisType, IAnalysisResults> results = new HashMap<AnalysisType, IAnalysisResults>();
+        for (Analysis analysis : builder.getAnalysisTypes())
+        {
+            analysis.extractSolvingInfo(circuit);
+            if (analysis instanceof ACAnalysis)
+                addProbes((ACAnalysis) analysis, builder.getOutputFilters());
+
+            IAnalysisResults res = analysis.run();
+            if (res == null) return null;
+            results.put(analysis.getType(), res);
+        }
+
+        ArrayList<IPrintData> data = new ArrayList<IPrintData>(filters.size());
+        for (OutputFilter f : filters)
+        {
+            IAnalysisResults result = results.get(f.getAnalysisType());
+            data.add(result == null ? null : f.filterResults(result));
+        }
+        return data;
+    }
+
 
     @Override
     public boolean addAnalysis(String analysis)
     {
+        failure = null;
         Analysis a = builder.parseAnalysis(analysis);
         requestedAnalysis.add(a);
-        a.extractSolvingInfo(circuit);
+        try
+        {
+            a.extractSolvingInfo(circuit);
+        } catch (AnalysisException e)
+        {
+            return fail(e);
+        }
+        if (a instanceof ACAnalysis)
+            addProbes((ACAnalysis) a, outputFilters);
         return save(a);
     }
 
+    @Override
+    public String getFailure()
+    {
+        return failure;
+    }
+
     @Override
     public IPrintData requestPrintData(String filter)
     {
@@ -153,7 +302,7 @@ public class Simulator implements ISimulator
     @Override
     public List<IPrintData> getAllResults()
     {
-        ArrayList<IPrintData> data = new ArrayList<IPrintData>();
+        ArrayList<IPrintData> data = new ArrayList<IPrintData>(sweepResults);
         for (OutputFilter f : outputFilters)
         {
             IAnalysisResults result = results.get(f.getAnalysisType());
@@ -165,9 +314,11 @@ public class Simulator implements ISimulator
 
     private void clearData()
     {
+        failure = null;
         outputFilters = new ArrayList<OutputFilter>();
         results = new HashMap<AnalysisType, IAnalysisResults>();
         requestedAnalysis = new ArrayList<Analysis>();
+        sweepResults = new ArrayList<IPrintData>();
     }
 
     /**
@@ -118,7 +118,8 @@ public class Circuit implements ICollectElements {
 
     /**
      * Return whether or not the Circuit is linear by determining if there are
-     * any NonLinCircuitElement among the elements of the Circuit.
+     * any NonLinCircuitElement among the elements of the Circuit, subcircuit
+     * instances included.
      * @return false if there are no NonLinCircuitElement, true if there are.
      */
     public boolean isLinear(){
@@ -126,6 +127,8 @@ public class Circuit implements ICollectElements {
         for(Map.Entry<String, CircuitElement>entry : elements.entrySet()){
             if(entry.getValue() instanceof  NonLinCircuitElement)
                 return false;
+            if(entry.getValue() instanceof SubCircuit && !((SubCircuit)entry.getValue()).isLinear())
+                return false;
         }
 
         return true;
@@ -2,6 +2,9 @@ package sriracha.simulator.model;
 
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.noise.NoiseEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
+import sriracha.simulator.solver.analysis.tran.TransientEquation;
 
 /**
  * Base class for all circuit elements including sources and subcircuits
@@ -83,6 +86,34 @@ public abstract class CircuitElement
      */
     public abstract void applyAC(ACEquation equation);
 
+    /**
+     * Stamps the capacitances and inductances of the element for transient analysis.
+     * Elements without any have nothing to stamp.
+     *
+     * @param equation TransientEquation object to be stamped
+     */
+    public void applyTransient(TransientEquation equation)
+    {}
+
+    /**
+     * Stamps the derivatives of the DC stamps of the element with respect to its
+     * parameter, for sensitivity analysis.  Elements without a DC parameter have
+     * nothing to stamp.
+     *
+     * @param equation SensitivityEquation object to be stamped
+     */
+    public void applySensitivity(SensitivityEquation equation)
+    {}
+
+    /**
+     * Stamps the noise sources of the element for noise analysis.
+     * Noiseless elements have nothing to stamp.
+     *
+     * @param equation NoiseEquation object to be stamped
+     */
+    public void applyNoise(NoiseEquation equation)
+    {}
+
 
     @Override
     public String toString()
@@ -68,4 +68,62 @@ public abstract class NonLinCircuitElement extends CircuitElement{
      */
     public abstract void getHessianContribution(IRealMatrix J, IRealVector x);
 
+    /**
+     * Hook called by the Newton Raphson iteration after each update, allowing the element
+     * to limit how fast its controlling voltages move between two iterates (e.g. junction
+     * voltage limiting for exponential devices).  The iteration then shortens the whole
+     * step to the smallest fraction accepted by its elements, so that limits set by elements
+     * sharing nodes do not undo each other.  The default implementation accepts any step.
+     * @param xNew the new node voltage vector.
+     * @param xOld the node voltage vector of the previous iteration.
+     * @return the fraction, in [0, 1], of the step from xOld to xNew the element accepts.
+     */
+    public double limitStep(IRealVector xNew, IRealVector xOld){
+        return 1;
+    }
+
+    /**
+     * Positions of the Jacobian matrix entries this element may add into through
+     * getHessianContribution.  The default implementation gives every (row, column)
+     * pair of non-ground node indices of the element.
+     * @return array of {row, column} pairs.
+     */
+    public int[][] getJacobianPositions(){
+        int[] nodes = getNodeIndices();
+        int count = 0;
+        for(int node : nodes){
+            if(node != -1)
+                count++;
+        }
+
+        int[][] positions = new int[count*count][];
+        int k = 0;
+        for(int row : nodes){
+            if(row == -1)
+                continue;
+            for(int col : nodes){
+                if(col != -1)
+                    positions[k++] = new int[]{row, col};
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Build a copy of this element connected to renumbered matrix indices, e.g. to
+     * stamp it into a reduced system.
+     * @param map new index of each matrix index of the present system.
+     * @return the copy, whose node indices are the mapped node indices of this element.
+     */
+    public NonLinCircuitElement buildMappedCopy(int[] map){
+        NonLinCircuitElement copy = (NonLinCircuitElement)buildCopy(name, getReferencedElement());
+        int[] nodes = getNodeIndices();
+        int[] mapped = new int[nodes.length];
+        for(int i = 0; i < nodes.length; i++){
+            mapped[i] = nodes[i] == -1 ? -1 : map[nodes[i]];
+        }
+        copy.setNodeIndices(mapped);
+        return copy;
+    }
+
 }
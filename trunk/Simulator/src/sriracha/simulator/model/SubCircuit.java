@@ -2,6 +2,8 @@ package sriracha.simulator.model;
 
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.noise.NoiseEquation;
+import sriracha.simulator.solver.analysis.tran.TransientEquation;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -32,6 +34,12 @@ public class SubCircuit extends CircuitElement
      */
     private HashMap<String, CircuitElement> elements;
 
+    /**
+     * Matrix index of the first internal node, the internal nodes and the extra
+     * variables of the internal elements follow contiguously.
+     */
+    private int firstVarIndex = -1;
+
 
     public SubCircuit(String name, SubCircuitTemplate template)
     {
@@ -51,6 +59,7 @@ public class SubCircuit extends CircuitElement
     @Override
     public void setFirstVarIndex(int i)
     {
+        firstVarIndex = i;
         //add internal node mappings
         for (int b = 0; b < template.getInternalNodeCount(); b++)
         {
@@ -148,6 +157,45 @@ public class SubCircuit extends CircuitElement
     }
 
 
+    /**
+     * @return false if any element of this instance, nested subcircuits included, is non-linear.
+     */
+    public boolean isLinear()
+    {
+        for (CircuitElement e : elements.values())
+        {
+            if (e instanceof NonLinCircuitElement) return false;
+            if (e instanceof SubCircuit && !((SubCircuit) e).isLinear()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return matrix indices of the external nodes, ground excluded.
+     */
+    public int[] getPortIndices()
+    {
+        ArrayList<Integer> ports = new ArrayList<Integer>();
+        for (int k = 0; k < template.getExternalNodeCount(); k++)
+        {
+            if (nodes.get(k) != -1) ports.add(nodes.get(k));
+        }
+        int val[] = new int[ports.size()], k = 0;
+        for (Integer i : ports) val[k++] = i;
+        return val;
+    }
+
+    /**
+     * @return matrix indices of the internal nodes and of the extra variables of the
+     * internal elements, i.e. the unknowns only this instance connects to.
+     */
+    public int[] getInternalIndices()
+    {
+        int val[] = new int[firstVarIndex == -1 ? 0 : getExtraVariableCount()];
+        for (int k = 0; k < val.length; k++) val[k] = firstVarIndex + k;
+        return val;
+    }
+
     @Override
     public void applyAC(ACEquation equation)
     {
@@ -157,6 +205,24 @@ public class SubCircuit extends CircuitElement
         }
     }
 
+    @Override
+    public void applyTransient(TransientEquation equation)
+    {
+        for (CircuitElement e : elements.values())
+        {
+            e.applyTransient(equation);
+        }
+    }
+
+    @Override
+    public void applyNoise(NoiseEquation equation)
+    {
+        for (CircuitElement e : elements.values())
+        {
+            e.applyNoise(equation);
+        }
+    }
+
     @Override
     public void applyDC(DCEquation equation)
     {
@@ -3,6 +3,7 @@ package sriracha.simulator.model.elements;
 import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.tran.TransientEquation;
 
 public class Capacitor extends CircuitElement
 {
@@ -65,6 +66,15 @@ public class Capacitor extends CircuitElement
 
     }
 
+    @Override
+    public void applyTransient(TransientEquation equation)
+    {
+        equation.applyMatrixStamp(nPlus, nPlus, capacitance);
+        equation.applyMatrixStamp(nPlus, nMinus, -capacitance);
+        equation.applyMatrixStamp(nMinus, nPlus, -capacitance);
+        equation.applyMatrixStamp(nMinus, nMinus, capacitance);
+    }
+
     @Override
     public int getNodeCount()
     {
@@ -7,6 +7,8 @@ import sriracha.simulator.model.models.DiodeModel;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
 import sriracha.simulator.solver.analysis.dc.DCNonLinEquation;
+import sriracha.simulator.solver.analysis.noise.NoiseEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
 
 /**
  * Diode circuit element using the equation: I = Is*(exp(V/Vt)-1)
@@ -88,7 +90,7 @@ public class Diode extends NonLinCircuitElement{
 
         double value = 0;
         if(nodeA == -1){
-            value = is*Math.exp((-1*(x.getValue(nodeB))/vt)-1);
+            value = is*(Math.exp(-x.getValue(nodeB)/vt)-1);
             f.addValue(nodeB, -value);
         }else if(nodeB == -1){
             value = is*(Math.exp(x.getValue(nodeA)/vt)-1);
@@ -143,6 +145,80 @@ public class Diode extends NonLinCircuitElement{
 
     }
 
+    /**
+     * Limit the change of the junction voltage between two Newton iterates
+     * (SPICE pnjlim).  Above the critical voltage, a large step is replaced by the
+     * logarithm of the step so that exp(V/Vt) stays within range and the iteration
+     * follows the diode curve instead of overshooting it.
+     *
+     * The limited junction voltage is returned as a fraction of the whole step rather
+     * than by moving the diode's own nodes: diodes in series share a node, and moving it
+     * for one junction would undo the limiting of the other.
+     */
+    @Override
+    public double limitStep(IRealVector xNew, IRealVector xOld){
+        double vNew = junctionVoltage(xNew);
+        double vOld = junctionVoltage(xOld);
+        double vLimited = limitJunctionVoltage(vNew, vOld);
+
+        if(vLimited == vNew)
+            return 1;
+
+        return Math.max(0, Math.min(1, (vLimited - vOld)/(vNew - vOld)));
+    }
+
+    /**
+     * pnjlim: limited value of a new junction voltage.
+     * @param vNew junction voltage proposed by the Newton update.
+     * @param vOld junction voltage of the previous iterate.
+     * @return the junction voltage to be used instead of vNew.
+     */
+    double limitJunctionVoltage(double vNew, double vOld){
+        double vCrit = getCriticalVoltage();
+
+        if(vNew > vCrit && Math.abs(vNew - vOld) > 2*vt){
+            if(vOld > 0){
+                double arg = 1 + (vNew - vOld)/vt;
+                if(arg > 0)
+                    return vOld + vt*Math.log(arg);
+                return vCrit;
+            }
+            return vt*Math.log(vNew/vt);
+        }
+        return vNew;
+    }
+
+    /**
+     * @return the voltage at which the diode current curve has its minimum
+     * radius of curvature, Vt*ln(Vt/(sqrt(2)*Is)).
+     */
+    public double getCriticalVoltage(){
+        return vt*Math.log(vt/(Math.sqrt(2)*is));
+    }
+
+    /**
+     * @return matrix index of the anode, -1 for ground.
+     */
+    public int getAnode(){
+        return nodeA;
+    }
+
+    /**
+     * @return matrix index of the cathode, -1 for ground.
+     */
+    public int getCathode(){
+        return nodeB;
+    }
+
+    /**
+     * @return the anode to cathode voltage in the node voltage vector x.
+     */
+    private double junctionVoltage(IRealVector x){
+        double vA = nodeA == -1 ? 0 : x.getValue(nodeA);
+        double vB = nodeB == -1 ? 0 : x.getValue(nodeB);
+        return vA - vB;
+    }
+
     @Override
     public void setNodeIndices(int... indices){
         nodeA = indices[0];
@@ -182,7 +258,27 @@ public class Diode extends NonLinCircuitElement{
 
     @Override
     public void applyAC(ACEquation equation) {
-        //To change body of implemented methods use File | Settings | File Templates.
+        //The small-signal conductance depends on the operating point, see OperatingPoint.applyAC.
+    }
+
+    /**
+     * The parameter is the saturation current, df/dIs = exp(V/Vt) - 1.
+     */
+    @Override
+    public void applySensitivity(SensitivityEquation equation){
+        double v = equation.getSolutionValue(nodeA) - equation.getSolutionValue(nodeB);
+        double value = Math.exp(v/vt) - 1;
+        equation.applyNonLinearSensitivity(nodeA, value);
+        equation.applyNonLinearSensitivity(nodeB, -value);
+    }
+
+    /**
+     * Shot noise of the junction current at the operating point.
+     */
+    @Override
+    public void applyNoise(NoiseEquation equation){
+        double v = equation.getSolutionValue(nodeA) - equation.getSolutionValue(nodeB);
+        equation.applyShotNoise(nodeA, nodeB, is*(Math.exp(v/vt) - 1));
     }
 
     @Override
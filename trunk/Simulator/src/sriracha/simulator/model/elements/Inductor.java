@@ -3,6 +3,7 @@ package sriracha.simulator.model.elements;
 import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.tran.TransientEquation;
 
 public class Inductor extends CircuitElement
 {
@@ -61,6 +62,12 @@ public class Inductor extends CircuitElement
         equation.applyComplexMatrixStamp(currentIndex, currentIndex, -inductance);
     }
 
+    @Override
+    public void applyTransient(TransientEquation equation)
+    {
+        equation.applyMatrixStamp(currentIndex, currentIndex, -inductance);
+    }
+
 
     @Override
     public int getNodeCount()
@@ -3,6 +3,8 @@ package sriracha.simulator.model.elements;
 import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.noise.NoiseEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
 
 public class Resistor extends CircuitElement
 {
@@ -39,6 +41,23 @@ public class Resistor extends CircuitElement
         equation.applyMatrixStamp(nodeB, nodeA, -G);
     }
 
+    @Override
+    public void applySensitivity(SensitivityEquation equation)
+    {
+        //d(1/R)/dR
+        double dG = -G * G;
+        equation.applyMatrixSensitivity(nodeA, nodeA, dG);
+        equation.applyMatrixSensitivity(nodeB, nodeB, dG);
+        equation.applyMatrixSensitivity(nodeA, nodeB, -dG);
+        equation.applyMatrixSensitivity(nodeB, nodeA, -dG);
+    }
+
+    @Override
+    public void applyNoise(NoiseEquation equation)
+    {
+        equation.applyThermalNoise(nodeA, nodeB, G);
+    }
+
     @Override
     public void applyAC(ACEquation equation)
     {
@@ -4,6 +4,7 @@ import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.model.elements.sources.VoltageSource;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
 
 public class CCCS extends CCSource
 {
@@ -37,6 +38,13 @@ public class CCCS extends CCSource
 
     }
 
+    @Override
+    public void applySensitivity(SensitivityEquation equation)
+    {
+        equation.applyMatrixSensitivity(nPlus, dummySource.getCurrentVarIndex(), 1);
+        equation.applyMatrixSensitivity(nMinus, dummySource.getCurrentVarIndex(), -1);
+    }
+
     @Override
     public int getNodeCount()
     {
@@ -4,6 +4,7 @@ import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.model.elements.sources.VoltageSource;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
 
 public class CCVS extends CCSource
 {
@@ -49,6 +50,12 @@ public class CCVS extends CCSource
 
     }
 
+    @Override
+    public void applySensitivity(SensitivityEquation equation)
+    {
+        equation.applyMatrixSensitivity(currentOutIndex, dummySource.getCurrentVarIndex(), -1);
+    }
+
     @Override
     public int getNodeCount()
     {
@@ -3,6 +3,7 @@ package sriracha.simulator.model.elements.ctlsources;
 import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
 
 public class VCCS extends VCSource
 {
@@ -47,6 +48,13 @@ public class VCCS extends VCSource
         equation.applyMatrixStamp(nMinus, currentIndex, -1);
     }
 
+    @Override
+    public void applySensitivity(SensitivityEquation equation)
+    {
+        //d(-1/gm)/dgm
+        equation.applyMatrixSensitivity(currentIndex, currentIndex, 1 / (gm * gm));
+    }
+
     @Override
     public int getNodeCount()
     {
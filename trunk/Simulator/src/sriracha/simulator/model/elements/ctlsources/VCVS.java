@@ -3,6 +3,7 @@ package sriracha.simulator.model.elements.ctlsources;
 import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
 
 public class VCVS extends VCSource
 {
@@ -48,6 +49,13 @@ public class VCVS extends VCSource
         equation.applyMatrixStamp(currentIndex, nMinus, 1);
     }
 
+    @Override
+    public void applySensitivity(SensitivityEquation equation)
+    {
+        equation.applyMatrixSensitivity(currentIndex, ncPlus, 1);
+        equation.applyMatrixSensitivity(currentIndex, ncMinus, -1);
+    }
+
     @Override
     public int getNodeCount()
     {
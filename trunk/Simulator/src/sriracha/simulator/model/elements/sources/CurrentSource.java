@@ -5,6 +5,7 @@ import sriracha.math.interfaces.IComplex;
 import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
 
 public class CurrentSource extends Source
 {
@@ -20,7 +21,7 @@ public class CurrentSource extends Source
         super(name, dcValue, MathActivator.Activator.complex(0, 0));
     }
 
-    private CurrentSource(String name, double dcValue, IComplex acPhasorValue)
+    public CurrentSource(String name, double dcValue, IComplex acPhasorValue)
     {
         super(name, dcValue, acPhasorValue);
     }
@@ -48,6 +49,13 @@ public class CurrentSource extends Source
         equation.applySourceVectorStamp(nPlus, -dcValue);
     }
 
+    @Override
+    public void applySensitivity(SensitivityEquation equation)
+    {
+        equation.applySourceSensitivity(nMinus, 1);
+        equation.applySourceSensitivity(nPlus, -1);
+    }
+
     @Override
     public void applyAC(ACEquation equation)
     {
@@ -71,7 +79,9 @@ public class CurrentSource extends Source
     @Override
     public CurrentSource buildCopy(String name, CircuitElement referencedElement)
     {
-        return new CurrentSource(name, dcValue, acPhasorValue);
+        CurrentSource copy = new CurrentSource(name, dcValue, acPhasorValue);
+        copy.setWaveform(waveform);
+        return copy;
     }
 
     @Override
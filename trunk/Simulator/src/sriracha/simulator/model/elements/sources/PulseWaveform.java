@@ -0,0 +1,87 @@
+package sriracha.simulator.model.elements.sources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trapezoidal pulse train: PULSE(V1 V2 TD TR TF PW PER).
+ * The source is at V1 until TD, rises to V2 in TR, stays at V2 for PW, falls back
+ * to V1 in TF and repeats every PER.  A PER that is not positive, like an omitted
+ * one, gives a single pulse.
+ */
+public class PulseWaveform extends Waveform
+{
+
+    private double initialValue, pulsedValue;
+
+    private double delay, riseTime, fallTime, pulseWidth, period;
+
+    /**
+     * @param initialValue V1
+     * @param pulsedValue  V2
+     * @param delay        TD, delay before the first rising edge
+     * @param riseTime     TR
+     * @param fallTime     TF
+     * @param pulseWidth   PW, Double.POSITIVE_INFINITY for a single step
+     * @param period       PER, Double.POSITIVE_INFINITY or not positive for a single pulse
+     */
+    public PulseWaveform(double initialValue, double pulsedValue, double delay, double riseTime,
+                         double fallTime, double pulseWidth, double period)
+    {
+        this.initialValue = initialValue;
+        this.pulsedValue = pulsedValue;
+        this.delay = delay;
+        this.riseTime = riseTime;
+        this.fallTime = fallTime;
+        this.pulseWidth = pulseWidth;
+        //A zero period would never move on to the next pulse.
+        this.period = period > 0 ? period : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public double getValue(double time)
+    {
+        if (time <= delay)
+            return initialValue;
+
+        double t = time - delay;
+        if (!Double.isInfinite(period))
+            t -= Math.floor(t / period) * period;
+
+        if (t < riseTime)
+            return initialValue + (pulsedValue - initialValue) * t / riseTime;
+        t -= riseTime;
+        if (t <= pulseWidth)
+            return pulsedValue;
+        t -= pulseWidth;
+        if (t < fallTime)
+            return pulsedValue + (initialValue - pulsedValue) * t / fallTime;
+        return initialValue;
+    }
+
+    @Override
+    public List<Double> getBreakpoints(double stopTime)
+    {
+        ArrayList<Double> breakpoints = new ArrayList<Double>();
+        double[] corners = {0, riseTime, riseTime + pulseWidth, riseTime + pulseWidth + fallTime};
+        for (double start = delay; start <= stopTime; start += period)
+        {
+            for (double corner : corners)
+            {
+                double t = start + corner;
+                if (t <= stopTime && !Double.isInfinite(t)
+                        && (breakpoints.isEmpty() || t > breakpoints.get(breakpoints.size() - 1)))
+                    breakpoints.add(t);
+            }
+            if (Double.isInfinite(period)) break;
+        }
+        return breakpoints;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PULSE(" + initialValue + " " + pulsedValue + " " + delay + " " + riseTime + " "
+                + fallTime + " " + pulseWidth + " " + period + ")";
+    }
+}
@@ -0,0 +1,55 @@
+package sriracha.simulator.model.elements.sources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Damped sinusoid: SIN(VO VA FREQ TD THETA).
+ * The source is at VO until TD, then VO + VA*exp(-THETA*(t-TD))*sin(2*PI*FREQ*(t-TD)).
+ */
+public class SineWaveform extends Waveform
+{
+
+    private double offset, amplitude, frequency, delay, damping;
+
+    /**
+     * @param offset    VO
+     * @param amplitude VA
+     * @param frequency FREQ in Hz
+     * @param delay     TD
+     * @param damping   THETA in 1/s
+     */
+    public SineWaveform(double offset, double amplitude, double frequency, double delay, double damping)
+    {
+        this.offset = offset;
+        this.amplitude = amplitude;
+        this.frequency = frequency;
+        this.delay = delay;
+        this.damping = damping;
+    }
+
+    @Override
+    public double getValue(double time)
+    {
+        if (time <= delay)
+            return offset;
+
+        double t = time - delay;
+        return offset + amplitude * Math.exp(-damping * t) * Math.sin(2 * Math.PI * frequency * t);
+    }
+
+    @Override
+    public List<Double> getBreakpoints(double stopTime)
+    {
+        ArrayList<Double> breakpoints = new ArrayList<Double>();
+        if (delay > 0 && delay <= stopTime)
+            breakpoints.add(delay);
+        return breakpoints;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SIN(" + offset + " " + amplitude + " " + frequency + " " + delay + " " + damping + ")";
+    }
+}
@@ -21,6 +21,11 @@ public abstract class Source extends CircuitElement
 
     protected IComplex acPhasorValue;
 
+    /**
+     * Time dependent value for transient analysis, null for a constant source.
+     */
+    protected Waveform waveform;
+
 
     /**
      * Constructor initializing name, dc and complex ac values.
@@ -47,6 +52,28 @@ public abstract class Source extends CircuitElement
      */
     public abstract void modifyStamp(double newDCValue, DCEquation equation);
 
+    /**
+     * @param time time in seconds.
+     * @return the value of the source at that time, its dc value if it has no waveform.
+     */
+    public double getValue(double time)
+    {
+        return waveform == null ? dcValue : waveform.getValue(time);
+    }
+
+    public Waveform getWaveform()
+    {
+        return waveform;
+    }
+
+    /**
+     * @param waveform time dependent value for transient analysis, null for a constant source.
+     */
+    public void setWaveform(Waveform waveform)
+    {
+        this.waveform = waveform;
+    }
+
     /**
      * Set the indices that correspond to the circuit element's nodes.
      * The nodes are assumed to be in the order they are in the netlist.
@@ -5,6 +5,7 @@ import sriracha.math.interfaces.IComplex;
 import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.solver.analysis.ac.ACEquation;
 import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.sens.SensitivityEquation;
 
 public class VoltageSource extends Source
 {
@@ -50,6 +51,12 @@ public class VoltageSource extends Source
         equation.applySourceVectorStamp(currentIndex, dcValue);
     }
 
+    @Override
+    public void applySensitivity(SensitivityEquation equation)
+    {
+        equation.applySourceSensitivity(currentIndex, 1);
+    }
+
     @Override
     public void applyAC(ACEquation equation)
     {
@@ -81,7 +88,9 @@ public class VoltageSource extends Source
     @Override
     public VoltageSource buildCopy(String name, CircuitElement referencedElement)
     {
-        return new VoltageSource(name, dcValue, acPhasorValue);
+        VoltageSource copy = new VoltageSource(name, dcValue, acPhasorValue);
+        copy.setWaveform(waveform);
+        return copy;
     }
 
     @Override
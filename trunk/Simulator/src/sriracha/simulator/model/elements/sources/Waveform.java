@@ -0,0 +1,25 @@
+package sriracha.simulator.model.elements.sources;
+
+import java.util.List;
+
+/**
+ * Time dependent value of an independent source for transient analysis.
+ */
+public abstract class Waveform
+{
+
+    /**
+     * @param time time in seconds.
+     * @return value of the source at that time.
+     */
+    public abstract double getValue(double time);
+
+    /**
+     * Times at which the waveform has a corner.  Transient analysis lands a time
+     * point on each of them and restarts its integration there.
+     *
+     * @param stopTime end of the simulated interval.
+     * @return the corner times in [0, stopTime], in increasing order.
+     */
+    public abstract List<Double> getBreakpoints(double stopTime);
+}
@@ -8,17 +8,24 @@ import sriracha.simulator.model.elements.Diode;
 import sriracha.simulator.model.elements.Inductor;
 import sriracha.simulator.model.elements.Resistor;
 import sriracha.simulator.model.elements.ctlsources.*;
-import sriracha.simulator.model.elements.sources.CurrentSource;
-import sriracha.simulator.model.elements.sources.Source;
-import sriracha.simulator.model.elements.sources.VoltageSource;
+import sriracha.simulator.model.elements.sources.*;
 import sriracha.simulator.model.models.CircuitElementModel;
 import sriracha.simulator.model.models.DiodeModel;
 import sriracha.simulator.solver.analysis.Analysis;
 import sriracha.simulator.solver.analysis.AnalysisType;
 import sriracha.simulator.solver.analysis.ac.ACAnalysis;
 import sriracha.simulator.solver.analysis.ac.ACSubType;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
 import sriracha.simulator.solver.analysis.dc.DCAnalysis;
 import sriracha.simulator.solver.analysis.dc.DCSweep;
+import sriracha.simulator.solver.analysis.dc.NewtonMode;
+import sriracha.simulator.solver.analysis.net.NetworkAnalysis;
+import sriracha.simulator.solver.analysis.net.NetworkParameter;
+import sriracha.simulator.solver.analysis.noise.NoiseAnalysis;
+import sriracha.simulator.solver.analysis.sens.SensitivityAnalysis;
+import sriracha.simulator.solver.analysis.tf.TransferFunctionAnalysis;
+import sriracha.simulator.solver.analysis.tran.IntegrationMethod;
+import sriracha.simulator.solver.analysis.tran.TransientAnalysis;
 import sriracha.simulator.solver.output.filtering.*;
 
 import java.util.*;
@@ -26,6 +33,12 @@ import java.util.*;
 public class CircuitBuilder
 {
 
+    /**
+     * Names of the options understood in .OPTIONS lines, any other is ignored.
+     */
+    private static final Set<String> KNOWN_OPTIONS = new HashSet<String>(Arrays.asList(
+            "RELTOL", "VNTOL", "ABSTOL", "ITL1", "METHOD", "TRANSTEP", "NEWTON"));
+
     /**
      *  Map of subcircuits using a String name as key and a SubCircuitTemplate as value
      */
@@ -45,11 +58,46 @@ public class CircuitBuilder
      */
     private ArrayList<OutputFilter> outputFilters = new ArrayList<OutputFilter>();
 
+    /**
+     * List of the .LIMIT bounds of Monte Carlo analysis.
+     */
+    private ArrayList<LimitFilter> limitFilters = new ArrayList<LimitFilter>();
+
     /**
      * List of circuit element models, such as models for diodes and BJTs.
      */
     private HashMap<String, CircuitElementModel>  circuitElementModels = new HashMap<String, CircuitElementModel>();
 
+    /**
+     * Convergence criteria of the non-linear solver, set by .OPTIONS lines.
+     */
+    private ConvergenceCriteria convergenceCriteria = new ConvergenceCriteria();
+
+    /**
+     * Integration method of transient analyses, set by the METHOD option.
+     */
+    private IntegrationMethod integrationMethod = IntegrationMethod.Trapezoidal;
+
+    /**
+     * Constant time step of linear transient analyses, set by the TRANSTEP option.
+     */
+    private boolean fixedTimeStep = false;
+
+    /**
+     * Parameters defined by .PARAM lines.
+     */
+    private ParameterSet parameters;
+
+    /**
+     * Parametric sweep of a .STEP line, null if there is none.
+     */
+    private ParameterStep step;
+
+    /**
+     * Monte Carlo trials of a .MC line, null if there is none.
+     */
+    private ParameterSampling sampling;
+
     public Circuit getCircuit()
     {
         return circuit;
@@ -69,14 +117,105 @@ public class CircuitBuilder
         return Collections.unmodifiableList(outputFilters);
     }
 
+    /**
+     * @return read-only list of the .LIMIT bounds.
+     */
+    public List<LimitFilter> getLimitFilters()
+    {
+        return Collections.unmodifiableList(limitFilters);
+    }
+
+    public ConvergenceCriteria getConvergenceCriteria()
+    {
+        return convergenceCriteria;
+    }
+
+    /**
+     * @return the parametric sweep of the netlist, null if it has no .STEP line.
+     */
+    public ParameterStep getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return the Monte Carlo trials of the netlist, null if it has no .MC line.
+     */
+    public ParameterSampling getSampling()
+    {
+        return sampling;
+    }
+
     /**
      * Constructor which breaks down the netlist into subcircuits, circuit parts,
      * analysis objects and OutputFilter object.
      * @param netlist The target netlist representing the new circuit.
      */
     public CircuitBuilder(String netlist)
+    {
+        this(netlist, new HashMap<String, Double>());
+    }
+
+    /**
+     * Constructor building a variant of a netlist, in which some parameters take the
+     * given values instead of their .PARAM definitions.  The .STEP line of the netlist
+     * is ignored, the variant being one of its steps.
+     * @param netlist The target netlist representing the new circuit.
+     * @param overrides upper case parameter names and their values.
+     */
+    public CircuitBuilder(String netlist, Map<String, Double> overrides)
+    {
+        this(netlist, overrides, null);
+    }
+
+    /**
+     * Constructor building a variant of a netlist, in which some parameters take the
+     * given values and the distributions of the parameters are drawn from a generator.
+     * The .STEP and .MC lines of the netlist are ignored unless the variant is the
+     * nominal circuit, without overrides nor generator.
+     * @param netlist The target netlist representing the new circuit.
+     * @param overrides upper case parameter names and their values.
+     * @param random generator of the distributions, null for their nominal values.
+     */
+    public CircuitBuilder(String netlist, Map<String, Double> overrides, Random random)
     {
         String[] lines = netlist.split("\\r?\\n");
+        boolean nominal = overrides.isEmpty() && random == null;
+
+        //Parameters are read first, lines can use them before their definition.
+        parameters = new ParameterSet(overrides, random);
+        for (int i = 1; i < lines.length; i++)
+        {
+            String upperLine = lines[i].toUpperCase();
+            if (upperLine.startsWith(".PARAM"))
+            {
+                parameters.parseLine(upperLine);
+                lines[i] = "";
+            } else if (upperLine.startsWith(".STEP"))
+            {
+                if (nominal)
+                    step = parseStep(upperLine);
+                lines[i] = "";
+            } else if (upperLine.startsWith(".MC"))
+            {
+                if (nominal)
+                    sampling = parseSampling(upperLine);
+                lines[i] = "";
+            }
+        }
+
+        if (step != null && sampling != null)
+            throw new ParseException("A netlist cannot have both a .STEP and a .MC statement.");
+
+        //The nominal circuit of a sweep over an otherwise undefined parameter uses its first value.
+        if (step != null)
+            parameters.setDefault(step.getName(), step.getValues().get(0));
+
+        for (int i = 1; i < lines.length; i++)
+        {
+            if (lines[i].length() > 0 && lines[i].charAt(0) != '*')
+                lines[i] = parameters.substitute(lines[i]);
+        }
 
         ArrayList<String> otherLines = new ArrayList<String>();
 
@@ -113,6 +252,9 @@ public class CircuitBuilder
                     circuitElementModels.put(newModel.getName(), newModel);
                 }else
                     System.out.println("Model name already in use.");
+            }else if(upperLine.startsWith(".OPTIONS")){
+                //Options apply to every analysis, wherever they appear in the netlist.
+                parseOptions(upperLine);
             }else
                 //The normal circuit elements.
                 otherLines.add(upperLine);
@@ -137,12 +279,78 @@ public class CircuitBuilder
             if (line.charAt(0) != '.')
                 parseCircuitElement(circuit, lines, i);
 
-            if (line.startsWith(".AC") || line.startsWith(".DC")){
+            if (line.startsWith(".AC") || line.startsWith(".DC") || line.startsWith(".TRAN")){
                 analysisTypes.add(parseAnalysis(line));
+            }else if (line.startsWith(".SENS")){
+                //Sensitivities are printed without a .PRINT line.
+                SensitivityAnalysis analysis = (SensitivityAnalysis) parseAnalysis(line);
+                analysisTypes.add(analysis);
+                outputFilters.add(new SensitivityFilter(analysis.getOutput()));
+            }else if (line.startsWith(".TF")){
+                //Same for transfer functions.
+                TransferFunctionAnalysis analysis = (TransferFunctionAnalysis) parseAnalysis(line);
+                analysisTypes.add(analysis);
+                outputFilters.add(new TransferFunctionFilter(analysis.getOutput(), analysis.getInput()));
+            }else if (line.startsWith(".NOISE")){
+                //And for noise.
+                NoiseAnalysis analysis = (NoiseAnalysis) parseAnalysis(line);
+                analysisTypes.add(analysis);
+                outputFilters.add(new NoiseFilter(analysis.getOutput(), analysis.getInput()));
+            }else if (line.startsWith(".NET")){
+                //And for network parameters, every entry of the matrix in the requested format.
+                NetworkAnalysis analysis = (NetworkAnalysis) parseAnalysis(line);
+                analysisTypes.add(analysis);
+                outputFilters.add(parseNetworkFilter(analysis, line));
             }else if (line.startsWith(".PRINT")){
                 outputFilters.add(parsePrint(line));
+            }else if (line.startsWith(".LIMIT")){
+                limitFilters.add(parseLimit(line));
             }
         }
+
+        for (LimitFilter limit : limitFilters)
+        {
+            boolean analysed = false;
+            for (Analysis analysis : analysisTypes)
+                analysed |= analysis.getType() == limit.getAnalysisType();
+            if (!analysed)
+                throw new ParseException("No " + limit.getAnalysisType() + " analysis for the limit: " + limit);
+        }
+    }
+
+    /**
+     * Create the bounds of a .LIMIT line:
+     * .LIMIT DC|AC|TRAN quantity lower upper
+     * AC quantities need a real format, such as VM(node) or VDB(node).
+     * @param line netlist .LIMIT line
+     * @return The LimitFilter object created
+     */
+    private LimitFilter parseLimit(String line)
+    {
+        String[] params = tokenizeLine(line);
+        if (params.length != 5)
+            throw new ParseException("Expected .LIMIT DC|AC|TRAN quantity lower upper: " + line);
+
+        AnalysisType type;
+        if (params[1].equals("DC"))
+            type = AnalysisType.DC;
+        else if (params[1].equals("AC"))
+            type = AnalysisType.AC;
+        else if (params[1].equals("TRAN"))
+            type = AnalysisType.TRAN;
+        else
+            throw new ParseException("Invalid limit analysis format: " + line);
+
+        if (type == AnalysisType.AC && params[2].indexOf('(') == 1)
+            throw new ParseException("AC limits need a real quantity, such as " + params[2].charAt(0) + "M"
+                    + params[2].substring(1) + ": " + line);
+
+        double lower = parseDouble(params[3]);
+        double upper = parseDouble(params[4]);
+        if (lower > upper)
+            throw new ParseException("The lower bound of a limit is above its upper bound: " + line);
+
+        return new LimitFilter(type, parseNodeInfo(params[2], line), lower, upper);
     }
 
     public OutputFilter parsePrint(String line)
@@ -159,50 +367,58 @@ public class CircuitBuilder
             printType = AnalysisType.AC;
         else if (printTypeStr.equalsIgnoreCase("DC"))
             printType = AnalysisType.DC;
-        else if (printTypeStr.equalsIgnoreCase("TRAN") || printTypeStr.equalsIgnoreCase("NOISE") || printTypeStr.equalsIgnoreCase("DISTO"))
+        else if (printTypeStr.equalsIgnoreCase("TRAN"))
+            printType = AnalysisType.TRAN;
+        else if (printTypeStr.equalsIgnoreCase("NOISE") || printTypeStr.equalsIgnoreCase("DISTO"))
             throw new UnsupportedOperationException("This format of analysis is currently not supported: " + line);
         else
             throw new ParseException("Invalid Plot analysis format: " + line);
 
         ArrayList<NodeInfo> resultInfoList = new ArrayList<NodeInfo>();
         for (int i = 2; i < params.length; i++)
-        {
-            char firstChar = Character.toUpperCase(params[i].charAt(0));
-            if (firstChar == 'V' || firstChar == 'I')
-            {
-                NodeDataFormat dataFormat = StringToOutputType(params[i].substring(1, params[i].indexOf('(')), line);
-                String[] nodeList = parseBracketContents(params[i].substring(params[i].indexOf('('), params[i].length()));
+            resultInfoList.add(parseNodeInfo(params[i], line));
 
-                for (String node : nodeList)
-                    if (node.length() == 0)
-                        throw new ParseException("Expected a node name: " + line);
+        OutputFilter outputFilter = new OutputFilter(printType);
+        for (NodeInfo info : resultInfoList)
+            outputFilter.addData(info);
 
-                if (firstChar == 'V')
-                {
-                    if (nodeList.length == 1)
-                        resultInfoList.add(new VoltageInfo(dataFormat, circuit.getNodeIndex(nodeList[0])));
-                    else if (nodeList.length == 2)
-                        resultInfoList.add(new VoltageInfo(dataFormat, circuit.getNodeIndex(nodeList[0]), circuit.getNodeIndex(nodeList[1])));
-                    else
-                        throw new ParseException("Voltages can only be requested between 1 or 2 nodes: " + line);
-                }
-                else if (firstChar == 'I')
-                {
-                    if (nodeList.length != 1 || Character.toUpperCase(nodeList[0].charAt(0)) != 'V')
-                        throw new ParseException("Currents can only be requested at a single voltage source: " + line);
+        return outputFilter;
+    }
 
-                    resultInfoList.add(new CurrentInfo(dataFormat, nodeList[0], circuit));
-                }
-            }
+    /**
+     * Create the NodeInfo object of an output expression:
+     * V(node), V(node1, node2) or I(voltage source), V and I possibly followed by a format (R, I, M, P, DB)
+     * @param expression the output expression.
+     * @param line netlist line of the expression, for error messages.
+     * @return The NodeInfo object created
+     */
+    private NodeInfo parseNodeInfo(String expression, String line)
+    {
+        char firstChar = Character.toUpperCase(expression.charAt(0));
+        if ((firstChar != 'V' && firstChar != 'I') || expression.indexOf('(') == -1)
+            throw new UnsupportedOperationException("The expression '" + expression + "' is not supported. Line: " + line);
+
+        NodeDataFormat dataFormat = StringToOutputType(expression.substring(1, expression.indexOf('(')), line);
+        String[] nodeList = parseBracketContents(expression.substring(expression.indexOf('('), expression.length()));
+
+        for (String node : nodeList)
+            if (node.length() == 0)
+                throw new ParseException("Expected a node name: " + line);
+
+        if (firstChar == 'V')
+        {
+            if (nodeList.length == 1)
+                return new VoltageInfo(dataFormat, circuit.getNodeIndex(nodeList[0]));
+            else if (nodeList.length == 2)
+                return new VoltageInfo(dataFormat, circuit.getNodeIndex(nodeList[0]), circuit.getNodeIndex(nodeList[1]));
             else
-                throw new UnsupportedOperationException("The expression '" + params[i] + "' is not supported. Line: " + line);
+                throw new ParseException("Voltages can only be requested between 1 or 2 nodes: " + line);
         }
 
-        OutputFilter outputFilter = new OutputFilter(printType);
-        for (NodeInfo info : resultInfoList)
-            outputFilter.addData(info);
+        if (nodeList.length != 1 || Character.toUpperCase(nodeList[0].charAt(0)) != 'V')
+            throw new ParseException("Currents can only be requested at a single voltage source: " + line);
 
-        return outputFilter;
+        return new CurrentInfo(dataFormat, nodeList[0], circuit);
     }
 
     private NodeDataFormat StringToOutputType(String outputString, String line)
@@ -282,6 +498,16 @@ public class CircuitBuilder
             return parseSmallSignal(line);
         else if (line.startsWith(".DC"))
             return parseDCAnalysis(line);
+        else if (line.startsWith(".TRAN"))
+            return parseTransientAnalysis(line);
+        else if (line.startsWith(".SENS"))
+            return parseSensitivityAnalysis(line);
+        else if (line.startsWith(".TF"))
+            return parseTransferFunctionAnalysis(line);
+        else if (line.startsWith(".NOISE"))
+            return parseNoiseAnalysis(line);
+        else if (line.startsWith(".NET"))
+            return parseNetworkAnalysis(line);
         else
             throw new UnsupportedOperationException("This format of analysis is currently not supported: " + line);
     }
@@ -328,7 +554,379 @@ public class CircuitBuilder
             }
         }
 
-        return new DCAnalysis(sweep1, sweep2);
+        DCAnalysis analysis = new DCAnalysis(sweep1, sweep2);
+        analysis.setConvergenceCriteria(convergenceCriteria);
+        return analysis;
+    }
+
+    /**
+     * Create a TransientAnalysis object accordingly to the specs from the input String line
+     * .TRAN tstep tstop [tstart [tmax]]
+     * @param line netlist description of the target transient analysis
+     * @return The TransientAnalysis object created
+     */
+    private TransientAnalysis parseTransientAnalysis(String line)
+    {
+        String[] params = line.split("\\s+");
+
+        if (params.length < 3 || params.length > 5)
+            throw new ParseException("Incorrect number of parameters for transient analysis: " + line);
+
+        double step = parseDouble(params[1]);
+        double stop = parseDouble(params[2]);
+        double start = params.length >= 4 ? parseDouble(params[3]) : 0;
+        double maxStep = params.length == 5 ? parseDouble(params[4]) : 0;
+
+        if (step <= 0)
+            throw new ParseException("Step size must be larger than 0 for transient analysis");
+        if (stop <= start || start < 0)
+            throw new ParseException("Stop time must be larger than start time for transient analysis");
+
+        TransientAnalysis analysis = new TransientAnalysis(step, stop, start, maxStep);
+        analysis.setConvergenceCriteria(convergenceCriteria);
+        analysis.setMethod(integrationMethod);
+        analysis.setFixedStep(fixedTimeStep);
+        return analysis;
+    }
+
+    /**
+     * Create a SensitivityAnalysis object accordingly to the specs from the input String line
+     * .SENS V(node) | V(node1, node2) | I(voltage source)
+     * @param line netlist description of the target sensitivity analysis
+     * @return The SensitivityAnalysis object created
+     */
+    private SensitivityAnalysis parseSensitivityAnalysis(String line)
+    {
+        String[] params = tokenizeLine(line);
+
+        if (params.length != 2)
+            throw new ParseException("Incorrect number of parameters for sensitivity analysis: " + line);
+
+        SensitivityAnalysis analysis = new SensitivityAnalysis(parseNodeInfo(params[1], line));
+        analysis.setConvergenceCriteria(convergenceCriteria);
+        return analysis;
+    }
+
+    /**
+     * Create a TransferFunctionAnalysis object accordingly to the specs from the input String line
+     * .TF V(node) | V(node1, node2) | I(voltage source) input_source
+     * @param line netlist description of the target transfer function analysis
+     * @return The TransferFunctionAnalysis object created
+     */
+    private TransferFunctionAnalysis parseTransferFunctionAnalysis(String line)
+    {
+        String[] params = tokenizeLine(line);
+
+        if (params.length != 3)
+            throw new ParseException("Incorrect number of parameters for transfer function analysis: " + line);
+
+        if (!(circuit.getElement(params[2]) instanceof Source))
+            throw new ParseException("The input of a transfer function must be an independent source: " + line);
+
+        TransferFunctionAnalysis analysis = new TransferFunctionAnalysis(parseNodeInfo(params[1], line),
+                (Source) circuit.getElement(params[2]));
+        analysis.setConvergenceCriteria(convergenceCriteria);
+        return analysis;
+    }
+
+    /**
+     * Create a NoiseAnalysis object accordingly to the specs from the input String line
+     * .NOISE V(node) | V(node1, node2) | I(voltage source) input_source LIN|DEC|OCT points fStart fStop
+     * @param line netlist description of the target noise analysis
+     * @return The NoiseAnalysis object created
+     */
+    private NoiseAnalysis parseNoiseAnalysis(String line)
+    {
+        String[] params = tokenizeLine(line);
+
+        if (params.length != 7)
+            throw new ParseException("Incorrect number of parameters for noise analysis: " + line);
+
+        if (!(circuit.getElement(params[2]) instanceof Source))
+            throw new ParseException("The input of a noise analysis must be an independent source: " + line);
+
+        ACSubType subType = parseSweepScale(params[3], line);
+        int numPoints = Integer.parseInt(params[4]);
+        if (numPoints == 0)
+            throw new ParseException("Must request more than 0 points for noise analysis");
+
+        NoiseAnalysis analysis = new NoiseAnalysis(parseNodeInfo(params[1], line), (Source) circuit.getElement(params[2]),
+                subType, parseDouble(params[5]), parseDouble(params[6]), numPoints);
+        analysis.setConvergenceCriteria(convergenceCriteria);
+        return analysis;
+    }
+
+    /**
+     * Create a NetworkAnalysis object accordingly to the specs from the input String line
+     * .NET Z|Y|S LIN|DEC|OCT points fStart fStop V(node) | V(node1, node2) ... [Z0=value]
+     * Each V(...) is a port, the parameter letter may be followed by a format (R, I, M, P, DB).
+     * @param line netlist description of the target network analysis
+     * @return The NetworkAnalysis object created
+     */
+    private NetworkAnalysis parseNetworkAnalysis(String line)
+    {
+        String[] params = tokenizeLine(line);
+
+        if (params.length < 7)
+            throw new ParseException("Incorrect number of parameters for network analysis: " + line);
+
+        NetworkParameter parameter;
+        switch (params[1].charAt(0))
+        {
+            case 'Z':
+                parameter = NetworkParameter.Impedance;
+                break;
+            case 'Y':
+                parameter = NetworkParameter.Admittance;
+                break;
+            case 'S':
+                parameter = NetworkParameter.Scattering;
+                break;
+            default:
+                throw new ParseException("Invalid network parameter. Must be Z, Y or S: " + line);
+        }
+
+        ACSubType subType = parseSweepScale(params[2], line);
+        int numPoints = Integer.parseInt(params[3]);
+        if (numPoints == 0)
+            throw new ParseException("Must request more than 0 points for network analysis");
+
+        int portEnd = params.length;
+        double referenceImpedance = NetworkAnalysis.STD_REFERENCE_IMPEDANCE;
+        if (params[portEnd - 1].startsWith("Z0="))
+        {
+            referenceImpedance = parseDouble(params[portEnd - 1].substring(3));
+            portEnd--;
+        }
+        if (portEnd == 6)
+            throw new ParseException("Network analysis requires at least one port: " + line);
+
+        int[] portPlus = new int[portEnd - 6];
+        int[] portMinus = new int[portEnd - 6];
+        for (int i = 6; i < portEnd; i++)
+        {
+            if (Character.toUpperCase(params[i].charAt(0)) != 'V' || params[i].indexOf('(') != 1)
+                throw new ParseException("Ports must be given as V(node) or V(node1, node2): " + line);
+
+            String[] nodeList = parseBracketContents(params[i].substring(1));
+            if (nodeList.length > 2 || nodeList[0].length() == 0)
+                throw new ParseException("Ports must be given as V(node) or V(node1, node2): " + line);
+
+            portPlus[i - 6] = circuit.getNodeIndex(nodeList[0]);
+            portMinus[i - 6] = nodeList.length == 2 ? circuit.getNodeIndex(nodeList[1]) : -1;
+        }
+
+        NetworkAnalysis analysis = new NetworkAnalysis(parameter, portPlus, portMinus,
+                subType, parseDouble(params[4]), parseDouble(params[5]), numPoints);
+        analysis.setReferenceImpedance(referenceImpedance);
+        analysis.setConvergenceCriteria(convergenceCriteria);
+        return analysis;
+    }
+
+    /**
+     * Create the output filter of a network analysis, printing every entry of its
+     * parameter matrix row by row in the format following the parameter letter.
+     * @param analysis network analysis created from line
+     * @param line netlist .NET line
+     * @return The OutputFilter object created
+     */
+    private OutputFilter parseNetworkFilter(NetworkAnalysis analysis, String line)
+    {
+        String parameter = tokenizeLine(line)[1];
+        NodeDataFormat dataFormat = StringToOutputType(parameter.substring(1), line);
+
+        OutputFilter outputFilter = new OutputFilter(AnalysisType.NET);
+        int ports = analysis.getPortCount();
+        for (int row = 1; row <= ports; row++)
+            for (int column = 1; column <= ports; column++)
+                outputFilter.addData(new NetworkParameterInfo(dataFormat, parameter.charAt(0), row, column, ports));
+
+        return outputFilter;
+    }
+
+    /**
+     * @param scale LIN, DEC or OCT
+     * @param line netlist line of the scale, for error messages.
+     * @return the sweep type of the scale.
+     */
+    private ACSubType parseSweepScale(String scale, String line)
+    {
+        if (scale.equals("LIN"))
+            return ACSubType.Linear;
+        else if (scale.equals("OCT"))
+            return ACSubType.Octave;
+        else if (scale.equals("DEC"))
+            return ACSubType.Decade;
+
+        throw new ParseException("Invalid scale format. Scale must be LIN, OCT or DEC: " + line);
+    }
+
+    /**
+     * Create the parametric sweep of a .STEP line:
+     * .STEP [LIN] PARAM name start stop increment
+     * .STEP DEC|OCT PARAM name start stop points
+     * .STEP PARAM name LIST value [value ...]
+     * @param line netlist .STEP line
+     * @return the ParameterStep object created
+     */
+    private ParameterStep parseStep(String line)
+    {
+        if (step != null)
+            throw new ParseException("Only one .STEP statement is supported: " + line);
+
+        String[] params = line.split("\\s+");
+        int i = 1;
+        String scale = "LIN";
+        if (params.length > i && !params[i].equals("PARAM"))
+            scale = params[i++];
+        if (params.length < i + 3 || !params[i].equals("PARAM"))
+            throw new ParseException("Expected .STEP [LIN|DEC|OCT] PARAM name ...: " + line);
+        String name = params[i + 1];
+        i += 2;
+
+        List<Double> values = new ArrayList<Double>();
+        if (params[i].equals("LIST"))
+        {
+            for (i++; i < params.length; i++)
+                values.add(parseDouble(params[i]));
+        } else
+        {
+            if (params.length != i + 3)
+                throw new ParseException("Expected start, stop and increment or points: " + line);
+            double start = parseDouble(params[i]);
+            double stop = parseDouble(params[i + 1]);
+
+            ACSubType subType = parseSweepScale(scale, line);
+            if (subType == ACSubType.Linear)
+                values = ParameterStep.linearValues(start, stop, parseDouble(params[i + 2]));
+            else
+                values = ParameterStep.logValues(subType == ACSubType.Decade ? 10 : 2, start, stop,
+                        Integer.parseInt(params[i + 2]));
+        }
+
+        if (values.isEmpty())
+            throw new ParseException("No values to step: " + line);
+        return new ParameterStep(name, values);
+    }
+
+    /**
+     * Create the Monte Carlo trials of a .MC line:
+     * .MC trials [SEED=value] [BINS=value]
+     * @param line netlist .MC line
+     * @return the ParameterSampling object created
+     */
+    private ParameterSampling parseSampling(String line)
+    {
+        if (sampling != null)
+            throw new ParseException("Only one .MC statement is supported: " + line);
+
+        String[] params = line.split("\\s+");
+        if (params.length < 2)
+            throw new ParseException("Expected .MC trials [SEED=value] [BINS=value]: " + line);
+
+        ParameterSampling result = new ParameterSampling(Integer.parseInt(params[1]));
+        for (int i = 2; i < params.length; i++)
+        {
+            String[] option = params[i].split("=");
+            if (option.length != 2)
+                throw new ParseException("Expected an option of the form NAME=VALUE: " + line);
+
+            if (option[0].equals("SEED"))
+                result.setSeed(Long.parseLong(option[1]));
+            else if (option[0].equals("BINS"))
+                result.setBins(Integer.parseInt(option[1]));
+            else
+                throw new ParseException("Unknown option " + option[0] + ": " + line);
+        }
+        return result;
+    }
+
+    /**
+     * Apply the solver options of a .OPTIONS line:
+     * .OPTIONS [RELTOL=value] [VNTOL=value] [ABSTOL=value] [ITL1=value] [METHOD=TRAP|GEAR]
+     * [TRANSTEP=ADAPTIVE|FIXED] [NEWTON=DIRECT|JFNK|HIERARCHICAL]
+     * Options meant for other simulators are ignored with a warning, so that netlists
+     * written for them can still be run; a known option with a bad value is an error.
+     * @param line netlist .OPTIONS line
+     */
+    private void parseOptions(String line)
+    {
+        String[] params = line.split("\\s+");
+
+        for (int i = 1; i < params.length; i++)
+        {
+            String[] option = params[i].split("=", 2);
+            if (!KNOWN_OPTIONS.contains(option[0]))
+            {
+                System.out.println("Warning, unknown option " + params[i] + " ignored: " + line);
+                continue;
+            }
+            if (option.length != 2 || option[1].isEmpty())
+                throw new ParseException("Expected a value for option " + option[0] + ": " + line);
+
+            if (option[0].equals("RELTOL"))
+                convergenceCriteria.setReltol(parsePositiveOption(option, line));
+            else if (option[0].equals("VNTOL"))
+                convergenceCriteria.setVntol(parsePositiveOption(option, line));
+            else if (option[0].equals("ABSTOL"))
+                convergenceCriteria.setAbstol(parsePositiveOption(option, line));
+            else if (option[0].equals("ITL1"))
+            {
+                double iterations = parsePositiveOption(option, line);
+                if (iterations != Math.floor(iterations))
+                    throw new ParseException("ITL1 must be a whole number of iterations: " + line);
+                convergenceCriteria.setMaxIterations((int) Math.min(iterations, Integer.MAX_VALUE));
+            }
+            else if (option[0].equals("METHOD"))
+            {
+                if (option[1].equals("TRAP"))
+                    integrationMethod = IntegrationMethod.Trapezoidal;
+                else if (option[1].equals("GEAR"))
+                    integrationMethod = IntegrationMethod.Gear2;
+                else
+                    throw new ParseException("Unknown integration method " + option[1] + ": " + line);
+            }
+            else if (option[0].equals("NEWTON"))
+            {
+                if (option[1].equals("DIRECT"))
+                    convergenceCriteria.setNewtonMode(NewtonMode.Direct);
+                else if (option[1].equals("JFNK"))
+                    convergenceCriteria.setNewtonMode(NewtonMode.JacobianFree);
+                else if (option[1].equals("HIERARCHICAL"))
+                    convergenceCriteria.setNewtonMode(NewtonMode.Hierarchical);
+                else
+                    throw new ParseException("Unknown Newton mode " + option[1] + ": " + line);
+            }
+            else if (option[0].equals("TRANSTEP"))
+            {
+                if (option[1].equals("ADAPTIVE"))
+                    fixedTimeStep = false;
+                else if (option[1].equals("FIXED"))
+                    fixedTimeStep = true;
+                else
+                    throw new ParseException("Unknown time step control " + option[1] + ": " + line);
+            }
+        }
+    }
+
+    /**
+     * @param option name and value of a numeric option.
+     * @param line   netlist .OPTIONS line, for error messages.
+     * @return the value of the option, which must be a positive number.
+     */
+    private static double parsePositiveOption(String[] option, String line)
+    {
+        double value;
+        try
+        {
+            value = parseDouble(option[1]);
+        } catch (NumberFormatException e)
+        {
+            throw new ParseException("Expected a number for option " + option[0] + ": " + line);
+        }
+        if (!(value > 0) || Double.isInfinite(value))
+            throw new ParseException("Option " + option[0] + " must be positive: " + line);
+        return value;
     }
 
     /**
@@ -342,7 +940,11 @@ public class CircuitBuilder
 
         String[] params = line.split("\\s+");
 
-        if (params.length != 5)
+        //adaptive sweeps accept an optional tolerance and point budget:
+        //.AC ADAPT pointsPerDecade fStart fStop [tolerance [maxPoints]]
+        boolean adaptive = params.length > 1 && params[1].equals("ADAPT");
+
+        if (!(params.length == 5 || (adaptive && params.length >= 5 && params.length <= 7)))
             throw new ParseException("Incorrect number of parameters for AC analysis: " + line);
 
         ACSubType subType;
@@ -353,8 +955,10 @@ public class CircuitBuilder
             subType = ACSubType.Octave;
         else if (params[1].equals("DEC"))
             subType = ACSubType.Decade;
+        else if (adaptive)
+            subType = ACSubType.Adaptive;
         else
-            throw new ParseException("Invalid scale format. Scale must be LIN, OCT, or DEC: " + line);
+            throw new ParseException("Invalid scale format. Scale must be LIN, OCT, DEC or ADAPT: " + line);
 
         int numPoints = Integer.parseInt(params[2]);
         double rangeStart = parseDouble(params[3]);
@@ -365,7 +969,26 @@ public class CircuitBuilder
             throw new ParseException("Must request more than 0 points for AC analysis");
         }
 
-        return new ACAnalysis(subType, rangeStart, rangeStop, numPoints);
+        ACAnalysis analysis;
+        if (adaptive)
+        {
+            double tolerance = params.length > 5 ? parseDouble(params[5]) : ACAnalysis.STD_ADAPTIVE_TOLERANCE;
+            int maxPoints = params.length > 6 ? Integer.parseInt(params[6]) : ACAnalysis.STD_ADAPTIVE_MAX_POINTS;
+
+            if (tolerance <= 0)
+                throw new ParseException("Tolerance must be larger than 0 for adaptive AC analysis: " + line);
+            if (maxPoints <= 0)
+                throw new ParseException("Maximum number of points must be larger than 0 for adaptive AC analysis: " + line);
+
+            analysis = new ACAnalysis(subType, rangeStart, rangeStop, numPoints, tolerance, maxPoints);
+            if (maxPoints < analysis.getCoarsePointCount())
+                throw new ParseException("Maximum number of points is smaller than the " + analysis.getCoarsePointCount()
+                        + " points of the initial grid for adaptive AC analysis: " + line);
+        } else
+            analysis = new ACAnalysis(subType, rangeStart, rangeStop, numPoints);
+
+        analysis.setConvergenceCriteria(convergenceCriteria);
+        return analysis;
     }
 
     /**
@@ -548,18 +1171,16 @@ public class CircuitBuilder
      */
     private void createCurrentSource(ICollectElements elementCollection, String name, String node1, String node2, String... params)
     {
-        SourceValue value = findPhasorOrDC(params);
+        int waveformIndex = findWaveform(params);
+        Waveform waveform = waveformIndex == -1 ? null :
+                parseWaveform(Arrays.copyOfRange(params, waveformIndex, params.length));
+        if (waveformIndex != -1)
+            params = Arrays.copyOfRange(params, 0, waveformIndex);
 
-        CurrentSource source;
-        if (value.AC != null)
-            source = new CurrentSource(name, value.AC);
-        else
-            source = new CurrentSource(name, value.DC);
+        SourceValue value = params.length == 0 ? new SourceValue(waveform.getValue(0)) : findPhasorOrDC(params);
 
-        /*
-        * Suggested Code instead of the above.
-        * source = new CurrentSource(name, value.DC, value.AC);
-        * */
+        CurrentSource source = new CurrentSource(name, value.DC, value.AC);
+        source.setWaveform(waveform);
 
         int node1Index = elementCollection.assignNodeMapping(node1);
         int node2Index = elementCollection.assignNodeMapping(node2);
@@ -577,9 +1198,16 @@ public class CircuitBuilder
      */
     private void createVoltageSource(ICollectElements elementCollection, String name, String node1, String node2, String... params)
     {
-        SourceValue value = findPhasorOrDC(params);
+        int waveformIndex = findWaveform(params);
+        Waveform waveform = waveformIndex == -1 ? null :
+                parseWaveform(Arrays.copyOfRange(params, waveformIndex, params.length));
+        if (waveformIndex != -1)
+            params = Arrays.copyOfRange(params, 0, waveformIndex);
+
+        SourceValue value = params.length == 0 ? new SourceValue(waveform.getValue(0)) : findPhasorOrDC(params);
 
         VoltageSource source = new VoltageSource(name, value.DC, value.AC);
+        source.setWaveform(waveform);
 
         int node1Index = elementCollection.assignNodeMapping(node1);
         int node2Index = elementCollection.assignNodeMapping(node2);
@@ -587,6 +1215,67 @@ public class CircuitBuilder
         elementCollection.addElement(source);
     }
 
+    /**
+     * @param params source parameters following the nodes.
+     * @return index of the parameter starting a PULSE or SIN waveform, -1 if there is none.
+     */
+    private int findWaveform(String... params)
+    {
+        for (int i = 0; i < params.length; i++)
+        {
+            String param = params[i].toUpperCase();
+            if (param.startsWith("PULSE") || param.startsWith("SIN"))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Create the transient waveform of a source.
+     * Possible formats (the parentheses may be separated by spaces or not):
+     *      PULSE(V1 V2 [TD [TR [TF [PW [PER]]]]]),
+     *      SIN(VO VA FREQ [TD [THETA]])
+     * @param params the parameters of the source from the waveform name on.
+     * @return The newly created Waveform.
+     */
+    private Waveform parseWaveform(String... params)
+    {
+        String joined = "";
+        for (String param : params)
+            joined += param + " ";
+
+        int open = joined.indexOf('('), close = joined.indexOf(')');
+        if (open == -1 || close < open || joined.substring(close + 1).trim().length() != 0)
+            throw new ParseException("Invalid waveform format: " + joined.trim());
+
+        String kind = joined.substring(0, open).trim().toUpperCase();
+        String contents = joined.substring(open + 1, close).trim();
+        String[] values = contents.length() == 0 ? new String[0] : contents.split("\\s+");
+        double[] v = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+            v[i] = parseDouble(values[i]);
+
+        if (kind.equals("PULSE"))
+        {
+            if (v.length < 2 || v.length > 7)
+                throw new ParseException("Incorrect number of parameters for PULSE: " + joined.trim());
+            return new PulseWaveform(v[0], v[1],
+                    v.length > 2 ? v[2] : 0,
+                    v.length > 3 ? v[3] : 0,
+                    v.length > 4 ? v[4] : 0,
+                    v.length > 5 ? v[5] : Double.POSITIVE_INFINITY,
+                    v.length > 6 ? v[6] : Double.POSITIVE_INFINITY);
+        } else if (kind.equals("SIN"))
+        {
+            if (v.length < 3 || v.length > 5)
+                throw new ParseException("Incorrect number of parameters for SIN: " + joined.trim());
+            return new SineWaveform(v[0], v[1], v[2],
+                    v.length > 3 ? v[3] : 0,
+                    v.length > 4 ? v[4] : 0);
+        } else
+            throw new ParseException("Unknown waveform " + kind + ": " + joined.trim());
+    }
+
     /**
      * Create a SourceValue object based on the information provided by params.
      * Possible formats (default value of ac is amplitude=1, phase=0) :
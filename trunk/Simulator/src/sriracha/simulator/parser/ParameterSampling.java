@@ -0,0 +1,84 @@
+package sriracha.simulator.parser;
+
+import java.util.Random;
+
+/**
+ * Trials of a Monte Carlo analysis, set by a .MC line:
+ * .MC trials [SEED=value] [BINS=value]
+ * Every trial draws the distributions of the netlist parameters from its own generator,
+ * seeded from the seed of the analysis and the number of the trial, so that a trial
+ * gives the same values whatever the order in which the trials are run.
+ */
+public class ParameterSampling
+{
+    public static final long STD_SEED = 1;
+
+    public static final int STD_BINS = 10;
+
+    private int trials;
+
+    private long seed = STD_SEED;
+
+    private int bins = STD_BINS;
+
+    /**
+     * @param trials number of trials, larger than 0.
+     */
+    public ParameterSampling(int trials)
+    {
+        if (trials <= 0)
+            throw new ParseException("The number of Monte Carlo trials must be positive: " + trials);
+        this.trials = trials;
+    }
+
+    public int getTrials()
+    {
+        return trials;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @return number of bins of the histogram of each printed value, and between the
+     * bounds of each .LIMIT.
+     */
+    public int getBins()
+    {
+        return bins;
+    }
+
+    public void setBins(int bins)
+    {
+        if (bins <= 0)
+            throw new ParseException("The number of histogram bins must be positive: " + bins);
+        this.bins = bins;
+    }
+
+    /**
+     * @param trial number of the trial, from 0.
+     * @return the generator of the distributions of the trial.
+     */
+    public Random randomOf(int trial)
+    {
+        //Consecutive seeds give correlated first values in java.util.Random, the
+        //seed of each trial is scrambled first (splitmix64 finalizer).
+        long z = seed + (trial + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
+    }
+
+    @Override
+    public String toString()
+    {
+        return ".MC " + trials + " SEED=" + seed + " BINS=" + bins;
+    }
+}
@@ -0,0 +1,403 @@
+package sriracha.simulator.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parameters of a netlist, defined by .PARAM lines:
+ * .PARAM name=value|{expression} [name=value|{expression} ...]
+ * Netlist lines refer to them through expressions in braces, such as {RL*2}, which are
+ * replaced by their value before the line is parsed.  Parameters may refer to each other,
+ * whatever the order of their definitions.
+ *
+ * Expressions combine numbers (with the usual suffixes, 1K, 2MEG, 10U), parameters,
+ * + - * / ^, brackets and the functions SQRT, EXP, LOG, LOG10 and ABS.
+ *
+ * The distributions of Monte Carlo analysis are functions too:
+ * GAUSS(nominal, relative deviation [, sigmas]), AGAUSS(nominal, absolute deviation [, sigmas]),
+ * UNIF(nominal, relative deviation) and AUNIF(nominal, absolute deviation), the deviation of
+ * a gaussian being reached at the given number of standard deviations, 1 by default.
+ * Without a random generator they return their nominal value.  Each expression in braces
+ * draws its own values, while a parameter defined by a distribution is drawn once and
+ * shared by every line using it.
+ */
+public class ParameterSet
+{
+    private static final Pattern DEFINITION = Pattern.compile("([A-Z_][A-Z0-9_]*)\\s*=\\s*(\\{[^}]*\\}|[^\\s{}]+)");
+
+    /**
+     * Expression of each parameter, as defined by .PARAM lines.
+     */
+    private HashMap<String, String> expressions = new HashMap<String, String>();
+
+    /**
+     * Values replacing the definitions of some parameters, such as the value of a .STEP.
+     */
+    private HashMap<String, Double> overrides;
+
+    /**
+     * Values of the parameters evaluated so far.
+     */
+    private HashMap<String, Double> values = new HashMap<String, Double>();
+
+    /**
+     * Parameters being evaluated, to detect circular definitions.
+     */
+    private HashSet<String> evaluating = new HashSet<String>();
+
+    /**
+     * Generator of the values of distributions, null for their nominal values.
+     */
+    private Random random;
+
+    /**
+     * @param overrides values replacing the definitions of some parameters, which
+     *                  do not need to be defined otherwise.
+     */
+    public ParameterSet(Map<String, Double> overrides)
+    {
+        this(overrides, null);
+    }
+
+    /**
+     * @param overrides values replacing the definitions of some parameters, which
+     *                  do not need to be defined otherwise.
+     * @param random    generator of the values of distributions, null for their nominal values.
+     */
+    public ParameterSet(Map<String, Double> overrides, Random random)
+    {
+        this.overrides = new HashMap<String, Double>(overrides);
+        this.random = random;
+    }
+
+    /**
+     * Add the definitions of a .PARAM line.
+     * @param line upper case .PARAM line.
+     */
+    public void parseLine(String line)
+    {
+        String definitions = line.substring(".PARAM".length()).trim();
+        Matcher matcher = DEFINITION.matcher(definitions);
+        int end = 0;
+        while (matcher.find())
+        {
+            if (definitions.substring(end, matcher.start()).trim().length() > 0)
+                throw new ParseException("Invalid parameter definition: " + line);
+
+            String expression = matcher.group(2);
+            if (expression.startsWith("{"))
+                expression = expression.substring(1, expression.length() - 1);
+            expressions.put(matcher.group(1), expression);
+            end = matcher.end();
+        }
+
+        if (end == 0 || definitions.substring(end).trim().length() > 0)
+            throw new ParseException("Invalid parameter definition: " + line);
+    }
+
+    /**
+     * @param name upper case parameter name.
+     * @return true if the parameter is defined or overridden.
+     */
+    public boolean contains(String name)
+    {
+        return overrides.containsKey(name) || expressions.containsKey(name);
+    }
+
+    /**
+     * Give a value to a parameter that is neither defined nor overridden.
+     * @param name upper case parameter name.
+     * @param value value of the parameter.
+     */
+    public void setDefault(String name, double value)
+    {
+        if (!contains(name))
+            overrides.put(name, value);
+    }
+
+    /**
+     * @param name upper case parameter name.
+     * @return the value of the parameter.
+     */
+    public double getValue(String name)
+    {
+        if (overrides.containsKey(name))
+            return overrides.get(name);
+
+        Double value = values.get(name);
+        if (value != null)
+            return value;
+
+        if (!expressions.containsKey(name))
+            throw new ParseException("Undefined parameter: " + name);
+        if (!evaluating.add(name))
+            throw new ParseException("Circular parameter definition: " + name);
+
+        value = evaluate(expressions.get(name));
+        evaluating.remove(name);
+        values.put(name, value);
+        return value;
+    }
+
+    /**
+     * @param expression arithmetic expression of numbers and parameters.
+     * @return the value of the expression.
+     */
+    public double evaluate(String expression)
+    {
+        return new Evaluator(expression.toUpperCase()).evaluate();
+    }
+
+    /**
+     * Replace every expression in braces of a netlist line by its value.
+     * @param line netlist line.
+     * @return the line without any braces.
+     */
+    public String substitute(String line)
+    {
+        int open = line.indexOf('{');
+        if (open == -1) return line;
+
+        StringBuilder sb = new StringBuilder();
+        int end = 0;
+        while (open != -1)
+        {
+            int close = line.indexOf('}', open);
+            if (close == -1)
+                throw new ParseException("Unmatched brace: " + line);
+
+            sb.append(line, end, open);
+            sb.append(evaluate(line.substring(open + 1, close)));
+            end = close + 1;
+            open = line.indexOf('{', end);
+        }
+        sb.append(line.substring(end));
+        return sb.toString();
+    }
+
+    /**
+     * Recursive descent evaluation of an upper case expression:
+     * sum = product {(+|-) product}, product = unary {(*|/) unary},
+     * unary = (+|-) unary | power, power = primary [^ unary].
+     */
+    private class Evaluator
+    {
+        private String expression;
+
+        private int position;
+
+        private Evaluator(String expression)
+        {
+            this.expression = expression;
+        }
+
+        private double evaluate()
+        {
+            double value = sum();
+            skipSpaces();
+            if (position < expression.length())
+                throw error();
+            return value;
+        }
+
+        private double sum()
+        {
+            double value = product();
+            while (true)
+            {
+                if (accept('+'))
+                    value += product();
+                else if (accept('-'))
+                    value -= product();
+                else
+                    return value;
+            }
+        }
+
+        private double product()
+        {
+            double value = unary();
+            while (true)
+            {
+                if (accept('*'))
+                    value *= unary();
+                else if (accept('/'))
+                    value /= unary();
+                else
+                    return value;
+            }
+        }
+
+        private double unary()
+        {
+            if (accept('-'))
+                return -unary();
+            if (accept('+'))
+                return unary();
+            return power();
+        }
+
+        private double power()
+        {
+            double value = primary();
+            if (accept('^'))
+                return Math.pow(value, unary());
+            return value;
+        }
+
+        private double primary()
+        {
+            if (accept('('))
+            {
+                double value = sum();
+                expect(')');
+                return value;
+            }
+
+            skipSpaces();
+            if (position == expression.length())
+                throw error();
+
+            char c = expression.charAt(position);
+            if (Character.isDigit(c) || c == '.')
+                return number();
+            if (Character.isLetter(c) || c == '_')
+            {
+                String name = name();
+                if (accept('('))
+                {
+                    ArrayList<Double> arguments = new ArrayList<Double>();
+                    do
+                        arguments.add(sum());
+                    while (accept(','));
+                    expect(')');
+                    return function(name, arguments);
+                }
+                return getValue(name);
+            }
+            throw error();
+        }
+
+        /**
+         * Number with an optional exponent and suffix, read by CircuitBuilder.parseDouble.
+         */
+        private double number()
+        {
+            int start = position;
+            while (position < expression.length() &&
+                    (Character.isDigit(expression.charAt(position)) || expression.charAt(position) == '.'))
+                position++;
+            String mantissa = expression.substring(start, position);
+
+            String exponent = "";
+            if (position + 1 < expression.length() && expression.charAt(position) == 'E')
+            {
+                int digits = position + 1;
+                if (expression.charAt(digits) == '+' || expression.charAt(digits) == '-')
+                    digits++;
+                if (digits < expression.length() && Character.isDigit(expression.charAt(digits)))
+                {
+                    String sign = expression.charAt(position + 1) == '-' ? "-" : "";
+                    position = digits;
+                    while (position < expression.length() && Character.isDigit(expression.charAt(position)))
+                        position++;
+                    exponent = "E" + sign + expression.substring(digits, position);
+                }
+            }
+
+            int suffix = position;
+            while (position < expression.length() && Character.isLetter(expression.charAt(position)))
+                position++;
+
+            return CircuitBuilder.parseDouble(mantissa + exponent + expression.substring(suffix, position));
+        }
+
+        private String name()
+        {
+            int start = position;
+            while (position < expression.length() &&
+                    (Character.isLetterOrDigit(expression.charAt(position)) || expression.charAt(position) == '_'))
+                position++;
+            return expression.substring(start, position);
+        }
+
+        private double function(String name, List<Double> arguments)
+        {
+            if (name.equals("GAUSS") || name.equals("AGAUSS") || name.equals("UNIF") || name.equals("AUNIF"))
+                return distribution(name, arguments);
+
+            if (arguments.size() != 1)
+                throw new ParseException("Function " + name + " takes one argument: " + expression);
+
+            double argument = arguments.get(0);
+            if (name.equals("SQRT"))
+                return Math.sqrt(argument);
+            else if (name.equals("EXP"))
+                return Math.exp(argument);
+            else if (name.equals("LOG"))
+                return Math.log(argument);
+            else if (name.equals("LOG10"))
+                return Math.log10(argument);
+            else if (name.equals("ABS"))
+                return Math.abs(argument);
+
+            throw new ParseException("Unknown function " + name + " in expression: " + expression);
+        }
+
+        private double distribution(String name, List<Double> arguments)
+        {
+            boolean gaussian = name.endsWith("GAUSS");
+            if (arguments.size() != 2 && !(gaussian && arguments.size() == 3))
+                throw new ParseException("Wrong number of arguments to " + name + ": " + expression);
+
+            double nominal = arguments.get(0);
+            if (random == null)
+                return nominal;
+
+            double deviation = arguments.get(1);
+            if (!name.startsWith("A"))
+                deviation *= nominal;
+
+            if (gaussian)
+            {
+                double sigmas = arguments.size() == 3 ? arguments.get(2) : 1;
+                return nominal + deviation / sigmas * random.nextGaussian();
+            }
+            return nominal + deviation * (2 * random.nextDouble() - 1);
+        }
+
+        private boolean accept(char c)
+        {
+            skipSpaces();
+            if (position < expression.length() && expression.charAt(position) == c)
+            {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c)
+        {
+            if (!accept(c))
+                throw error();
+        }
+
+        private void skipSpaces()
+        {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position)))
+                position++;
+        }
+
+        private ParseException error()
+        {
+            return new ParseException("Invalid expression: " + expression);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package sriracha.simulator.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Values taken by a parameter in a parametric sweep, set by a .STEP line:
+ * .STEP [LIN] PARAM name start stop increment
+ * .STEP DEC|OCT PARAM name start stop points
+ * .STEP PARAM name LIST value1 value2 ...
+ */
+public class ParameterStep
+{
+    private String name;
+
+    private ArrayList<Double> values = new ArrayList<Double>();
+
+    /**
+     * @param name   upper case name of the stepped parameter.
+     * @param values values of the parameter, in the order the variants are reported.
+     */
+    public ParameterStep(String name, List<Double> values)
+    {
+        this.name = name;
+        this.values.addAll(values);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return read-only list of the values of the parameter.
+     */
+    public List<Double> getValues()
+    {
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @param start     first value.
+     * @param stop      last value, included.
+     * @param increment difference between consecutive values, of the sign of stop - start.
+     * @return the values of a linear sweep.
+     */
+    public static List<Double> linearValues(double start, double stop, double increment)
+    {
+        if (increment == 0 || (stop - start) * increment < 0)
+            throw new ParseException("Step increment of " + increment + " cannot reach " + stop + " from " + start);
+
+        ArrayList<Double> values = new ArrayList<Double>();
+        int count = (int) Math.floor((stop - start) / increment + 1e-9);
+        for (int k = 0; k <= count; k++)
+            values.add(start + k * increment);
+        return values;
+    }
+
+    /**
+     * @param base   10 for decades, 2 for octaves.
+     * @param start  first value, larger than 0.
+     * @param stop   last value, included if on the grid.
+     * @param points number of values per decade or octave.
+     * @return the values of a logarithmic sweep.
+     */
+    public static List<Double> logValues(double base, double start, double stop, int points)
+    {
+        if (start <= 0 || stop < start || points <= 0)
+            throw new ParseException("Invalid logarithmic step from " + start + " to " + stop);
+
+        ArrayList<Double> values = new ArrayList<Double>();
+        int count = (int) Math.floor(points * Math.log(stop / start) / Math.log(base) + 1e-9);
+        for (int k = 0; k <= count; k++)
+            values.add(start * Math.pow(base, (double) k / points));
+        return values;
+    }
+
+    @Override
+    public String toString()
+    {
+        return ".STEP PARAM " + name + " " + values;
+    }
+}
@@ -7,8 +7,9 @@ package sriracha.simulator.solver.analysis;
  * Time: 2:40 PM
  * To change this template use File | Settings | File Templates.
  */
-public class AnalysisException extends Exception
+public class AnalysisException extends RuntimeException
 {
+    private static final long serialVersionUID = 1L;
 
     public AnalysisException(String message)
     {
@@ -9,5 +9,10 @@ package sriracha.simulator.solver.analysis;
  */
 public enum AnalysisType {
     AC,
-    DC
+    DC,
+    TRAN,
+    SENS,
+    TF,
+    NOISE,
+    NET
 }
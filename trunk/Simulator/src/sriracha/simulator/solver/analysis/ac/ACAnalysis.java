@@ -1,14 +1,45 @@
 package sriracha.simulator.solver.analysis.ac;
 
+import sriracha.math.interfaces.IComplex;
 import sriracha.math.interfaces.IComplexVector;
 import sriracha.simulator.Options;
 import sriracha.simulator.Simulator;
 import sriracha.simulator.model.Circuit;
 import sriracha.simulator.solver.analysis.Analysis;
 import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
+import sriracha.simulator.solver.output.filtering.NodeInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
 
 public final class ACAnalysis extends Analysis
 {
+    /**
+     * Default largest change allowed between two neighbouring points of an
+     * adaptive sweep, in dB for magnitudes and in degrees for phases.
+     */
+    public static final double STD_ADAPTIVE_TOLERANCE = 1.0;
+
+    /**
+     * Default maximum number of frequency points solved by an adaptive sweep.
+     */
+    public static final int STD_ADAPTIVE_MAX_POINTS = 1000;
+
+    /**
+     * Intervals narrower than this (relative to their upper frequency) are never bisected,
+     * this keeps discontinuities from eating up the whole point budget.
+     */
+    private static final double MIN_INTERVAL_WIDTH = 1e-9;
+
+    /**
+     * Magnitudes below this value are considered to be 0 when comparing points.
+     */
+    private static final double MIN_MAGNITUDE = 1e-20;
+
     /**
      * Type of scale for output octave and decade are log scales
      */
@@ -30,6 +61,27 @@ public final class ACAnalysis extends Analysis
      */
     private int points;
 
+    /**
+     * For Adaptive, largest change (dB or degrees) tolerated between neighbouring points
+     */
+    private double tolerance;
+
+    /**
+     * For Adaptive, maximum number of frequency points to solve
+     */
+    private int maxPoints;
+
+    /**
+     * For Adaptive, quantities whose variation drives the refinement.
+     * When empty every variable of the solution vector is watched.
+     */
+    private ArrayList<NodeInfo> probes;
+
+    /**
+     * Convergence criteria of the DC operating point of non-linear circuits.
+     */
+    private ConvergenceCriteria criteria = new ConvergenceCriteria();
+
     /**
      * @param subType Type of scale for output octave and decade are log scales
      * @param fStart  start frequency
@@ -43,18 +95,87 @@ public final class ACAnalysis extends Analysis
         this.fStart = fStart;
         this.fEnd = fEnd;
         this.points = points;
+        tolerance = STD_ADAPTIVE_TOLERANCE;
+        maxPoints = STD_ADAPTIVE_MAX_POINTS;
+        probes = new ArrayList<NodeInfo>();
+    }
+
+    /**
+     * @param subType   Type of scale for output octave and decade are log scales
+     * @param fStart    start frequency
+     * @param fEnd      stop frequency
+     * @param points    for Linear total number of frequency points, number per decade/octave,
+     *                  or for Adaptive number per decade of the initial coarse grid
+     * @param tolerance for Adaptive, largest change (dB or degrees) tolerated between neighbouring points
+     * @param maxPoints for Adaptive, maximum number of frequency points to solve
+     */
+    public ACAnalysis(ACSubType subType, double fStart, double fEnd, int points, double tolerance, int maxPoints)
+    {
+        this(subType, fStart, fEnd, points);
+        this.tolerance = tolerance;
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * Adds quantities to watch during an adaptive sweep, typically the content of the
+     * .PRINT AC statements. Has no effect on the other sweep types.
+     *
+     * @param info requested output quantities
+     */
+    public void addProbes(List<NodeInfo> info)
+    {
+        for (NodeInfo i : info)
+        {
+            if (!probes.contains(i)) probes.add(i);
+        }
     }
 
 
     /**
-     * Helper method for analysis
+     * Frequencies of a linear, decade or octave sweep, in the order they are solved.
+     * For log scales "points" frequencies are spread linearly over each decade (or octave).
+     *
+     * @param subType Linear, Decade or Octave
+     * @param fStart  start frequency
+     * @param fEnd    stop frequency
+     * @param points  for Linear total number of frequency points or number per decade/octave
+     * @return the frequencies of the sweep
+     */
+    public static List<Double> sweepFrequencies(ACSubType subType, double fStart, double fEnd, int points)
+    {
+        ArrayList<Double> frequencies = new ArrayList<Double>();
+        switch (subType)
+        {
+            case Linear:
+                if (points == 1)
+                { //to avoid divide by 0 issues
+                    frequencies.add(fStart);
+                } else {
+                    double interval = (fEnd - fStart) / (points - 1);
+                    for (int i = 0; i < points; i++)
+                        frequencies.add(fStart + interval * i);
+                }
+                break;
+            case Decade:
+                logScaleFrequencies(frequencies, 10, fStart, fEnd, points);
+                break;
+            case Octave:
+                logScaleFrequencies(frequencies, 8, fStart, fEnd, points);
+                break;
+            default:
+                throw new IllegalArgumentException("Adaptive sweeps have no predefined frequencies.");
+        }
+        return frequencies;
+    }
+
+    /**
+     * Helper method for sweepFrequencies
      *
+     * @param frequencies list to which the frequencies are added
      * @param base
-     * @return analysis results
      */
-    private ACResults logScaleRun(int base)
+    private static void logScaleFrequencies(List<Double> frequencies, int base, double fStart, double fEnd, int points)
     {
-        ACResults results = new ACResults();
         double currentFrequency = fStart;
         int magnitudeScale = 1;
         while (currentFrequency <= fEnd)
@@ -62,64 +183,208 @@ public final class ACAnalysis extends Analysis
             currentFrequency = fStart * magnitudeScale;
             if (points == 1)
             {
-                results.addVector(currentFrequency, equation.solve(currentFrequency));
+                frequencies.add(currentFrequency);
             } else
             {
                 double range = currentFrequency * (base - 1);
                 double interval = range / (points - 1);
                 for (int i = 0; i < points && currentFrequency <= fEnd; i++)
                 {
-                    if (Simulator.Instance.isCancelRequested()) return null;
-
-                    if (Options.isPrintProgress()) System.out.println("AC solving point");
-                    IComplexVector soln = equation.solve(currentFrequency);
-                    results.addVector(currentFrequency, soln);
+                    frequencies.add(currentFrequency);
                     currentFrequency += interval;
-
                 }
             }
 
 
             magnitudeScale *= base;
         }
+    }
+
+    /**
+     * Helper method for analysis.
+     * Solves a coarse grid, then keeps bisecting the interval showing the largest change
+     * in the probed response until every interval is within tolerance or the point budget is spent.
+     *
+     * @return analysis results, sorted by frequency
+     */
+    private ACResults adaptiveRun()
+    {
+        TreeMap<Double, IComplexVector> solved = new TreeMap<Double, IComplexVector>();
+        PriorityQueue<FrequencyInterval> intervals = new PriorityQueue<FrequencyInterval>();
+
+        for (double frequency : coarseGrid())
+        {
+            if (Simulator.Instance.isCancelRequested()) return null;
+
+            if (Options.isPrintProgress()) System.out.println("AC solving point");
+            solved.put(frequency, equation.solve(frequency));
+        }
+
+        Map.Entry<Double, IComplexVector> previous = null;
+        for (Map.Entry<Double, IComplexVector> entry : solved.entrySet())
+        {
+            if (previous != null)
+                queueInterval(intervals, previous.getKey(), previous.getValue(), entry.getKey(), entry.getValue());
+            previous = entry;
+        }
+
+        //worst interval first, so a limited budget is spent where the response moves the most.
+        while (!intervals.isEmpty() && solved.size() < maxPoints)
+        {
+            if (Simulator.Instance.isCancelRequested()) return null;
+
+            FrequencyInterval worst = intervals.poll();
+            double middle = midFrequency(worst.fLow, worst.fHigh);
+
+            if (Options.isPrintProgress()) System.out.println("AC solving point");
+            IComplexVector soln = equation.solve(middle);
+            solved.put(middle, soln);
+
+            queueInterval(intervals, worst.fLow, worst.low, middle, soln);
+            queueInterval(intervals, middle, soln, worst.fHigh, worst.high);
+        }
+
+        ACResults results = new ACResults();
+        for (Map.Entry<Double, IComplexVector> entry : solved.entrySet())
+        {
+            results.addVector(entry.getKey(), entry.getValue());
+        }
         return results;
     }
 
+    /**
+     * Initial grid of an adaptive sweep: "points" per decade when the range is
+     * strictly positive, "points" linearly spaced points otherwise.
+     *
+     * @return increasing frequencies, both end points included
+     */
+    private double[] coarseGrid()
+    {
+        if (fEnd <= fStart) return new double[]{fStart};
+
+        int intervalCount = getCoarsePointCount() - 1;
+        double[] grid = new double[intervalCount + 1];
+        for (int i = 0; i <= intervalCount; i++)
+        {
+            if (fStart > 0)
+                grid[i] = fStart * Math.pow(fEnd / fStart, (double) i / intervalCount);
+            else
+                grid[i] = fStart + (fEnd - fStart) * i / intervalCount;
+        }
+        grid[intervalCount] = fEnd;
+        return grid;
+    }
+
+    /**
+     * @return number of frequencies of the initial grid of an adaptive sweep, which an
+     * adaptive sweep always solves whatever its point budget.
+     */
+    public int getCoarsePointCount()
+    {
+        if (fEnd <= fStart) return 1;
+
+        int intervalCount;
+        if (fStart > 0)
+            intervalCount = (int) Math.ceil(points * Math.log10(fEnd / fStart));
+        else
+            intervalCount = points - 1;
+        return Math.max(intervalCount, 1) + 1;
+    }
+
+    /**
+     * Midpoint of an interval, geometric for positive frequencies since the
+     * response of a circuit usually varies with log(f).
+     */
+    private static double midFrequency(double fLow, double fHigh)
+    {
+        return fLow > 0 ? Math.sqrt(fLow * fHigh) : (fLow + fHigh) / 2;
+    }
+
+    /**
+     * Adds the interval to the queue if it is wide enough and the probed response changes
+     * by more than the tolerance across it.
+     */
+    private void queueInterval(PriorityQueue<FrequencyInterval> intervals, double fLow, IComplexVector low,
+                               double fHigh, IComplexVector high)
+    {
+        if (fHigh - fLow <= MIN_INTERVAL_WIDTH * Math.abs(fHigh)) return;
+
+        double change = responseChange(low, high);
+        if (change > tolerance)
+            intervals.add(new FrequencyInterval(fLow, low, fHigh, high, change));
+    }
+
+    /**
+     * Largest change in magnitude (dB) or phase (degrees) of the probed quantities between two solutions.
+     */
+    private double responseChange(IComplexVector a, IComplexVector b)
+    {
+        double change = 0;
+        if (probes.isEmpty())
+        {
+            for (int i = 0; i < a.getDimension(); i++)
+            {
+                change = Math.max(change, phasorChange(a.getValue(i), b.getValue(i)));
+            }
+        } else
+        {
+            for (NodeInfo probe : probes)
+            {
+                IComplex pa = probe.extractPhasor(a);
+                IComplex pb = probe.extractPhasor(b);
+                if (pa != null && pb != null)
+                    change = Math.max(change, phasorChange(pa, pb));
+            }
+        }
+        return change;
+    }
+
+    private static double phasorChange(IComplex a, IComplex b)
+    {
+        double magA = NodeInfo.getMagnitude(a);
+        double magB = NodeInfo.getMagnitude(b);
+
+        if (magA < MIN_MAGNITUDE && magB < MIN_MAGNITUDE) return 0;
+
+        double dbChange = Math.abs(NodeInfo.toDecibel(Math.max(magA, MIN_MAGNITUDE)) -
+                NodeInfo.toDecibel(Math.max(magB, MIN_MAGNITUDE)));
+
+        //phase of a vanishing phasor is meaningless
+        if (magA < MIN_MAGNITUDE || magB < MIN_MAGNITUDE) return dbChange;
+
+        double phaseChange = Math.abs(Math.toDegrees(NodeInfo.getPhase(a) - NodeInfo.getPhase(b))) % 360;
+        if (phaseChange > 180) phaseChange = 360 - phaseChange;
+
+        return Math.max(dbChange, phaseChange);
+    }
+
+    /**
+     * @param criteria convergence criteria of the DC operating point of non-linear circuits.
+     */
+    public void setConvergenceCriteria(ConvergenceCriteria criteria)
+    {
+        this.criteria = criteria;
+    }
+
     @Override
     public void extractSolvingInfo(Circuit circuit)
     {
-        equation = ACEquation.generate(circuit);
+        equation = ACEquation.generate(circuit, criteria);
     }
 
     @Override
     public ACResults run()
     {
+        if (subType == ACSubType.Adaptive)
+            return adaptiveRun();
+
         ACResults results = new ACResults();
-        switch (subType)
+        for (double frequency : sweepFrequencies(subType, fStart, fEnd, points))
         {
-            case Linear:
-                if (points == 1)
-                { //to avoid divide by 0 issues
-                    results.addVector(fStart, equation.solve(fStart));
-                } else {
-                    double interval = (fEnd - fStart) / (points - 1);
-                    for (int i = 0; i < points; i++)
-                    {
-                        if (Simulator.Instance.isCancelRequested()) return null;
-
-                        double omega = fStart + interval * i;
-                        if (Options.isPrintProgress()) System.out.println("AC solving point");
-                        IComplexVector soln = equation.solve(omega);
-                        results.addVector(omega, soln);
-
-                    }
-                }
+            if (Simulator.Instance.isCancelRequested()) return null;
 
-                break;
-            case Decade:
-                return logScaleRun(10);
-            case Octave:
-                return logScaleRun(8);
+            if (Options.isPrintProgress()) System.out.println("AC solving point");
+            results.addVector(frequency, equation.solve(frequency));
         }
         return results;
     }
@@ -127,6 +392,34 @@ public final class ACAnalysis extends Analysis
     @Override
     public String toString()
     {
+        if (subType == ACSubType.Adaptive)
+            return ".AC " + subType + " " + points + " " + fStart + " " + fEnd + " " + tolerance + " " + maxPoints;
         return ".AC " + subType + " " + points + " " + fStart + " " + fEnd;
     }
+
+    /**
+     * Interval between two solved frequencies of an adaptive sweep,
+     * ordered so that the largest change comes out of a queue first.
+     */
+    private static class FrequencyInterval implements Comparable<FrequencyInterval>
+    {
+        private double fLow, fHigh;
+        private IComplexVector low, high;
+        private double change;
+
+        private FrequencyInterval(double fLow, IComplexVector low, double fHigh, IComplexVector high, double change)
+        {
+            this.fLow = fLow;
+            this.low = low;
+            this.fHigh = fHigh;
+            this.high = high;
+            this.change = change;
+        }
+
+        @Override
+        public int compareTo(FrequencyInterval o)
+        {
+            return Double.compare(o.change, change);
+        }
+    }
 }
@@ -2,12 +2,15 @@ package sriracha.simulator.solver.analysis.ac;
 
 import sriracha.math.MathActivator;
 import sriracha.math.interfaces.IComplex;
+import sriracha.math.interfaces.IComplexLUDecomposition;
 import sriracha.math.interfaces.IComplexMatrix;
 import sriracha.math.interfaces.IComplexVector;
 import sriracha.math.interfaces.IRealMatrix;
 import sriracha.simulator.Options;
 import sriracha.simulator.model.Circuit;
 import sriracha.simulator.model.CircuitElement;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
+import sriracha.simulator.solver.analysis.dc.OperatingPoint;
 
 /**
  * Linear equation
@@ -65,6 +68,18 @@ public class ACEquation
         return a.solve(b);
     }
 
+    /**
+     * Factor the matrix of the specified frequency point, for callers solving it
+     * for several right-hand sides or for adjoint solves.
+     *
+     * @param frequency in Hz
+     * @return the LU factors of C + G*2*PI*frequency
+     */
+    public IComplexLUDecomposition decompose(double frequency)
+    {
+        return buildMatrixA(frequency).luDecompose();
+    }
+
     /**
      * builds matrix for solving circuit at specified frequency point
      *
@@ -136,13 +151,16 @@ public class ACEquation
      * The "applyAC" method of circuit elements will call "applyRealMatrixStamp",
      * "applyComplexMatrixStamp" or "applySourceVectorStamp" method of ACEquation
      * class through the elements of the circuit.
+     * Non-linear elements are linearized at the DC operating point of the circuit,
+     * which is solved once per circuit and shared by all its AC analyses.
      *
-     * @param circuit Target circuit object from which circuit elements are obtained.
-     *                It is expected to have already been set up with all the
-     *                extra variables present.
+     * @param circuit  Target circuit object from which circuit elements are obtained.
+     *                 It is expected to have already been set up with all the
+     *                 extra variables present.
+     * @param criteria convergence criteria of the operating point of non-linear circuits.
      * @return
      */
-    public static ACEquation generate(Circuit circuit)
+    public static ACEquation generate(Circuit circuit, ConvergenceCriteria criteria)
     {
         ACEquation equation = new ACEquation(circuit.getMatrixSize());
 
@@ -151,6 +169,9 @@ public class ACEquation
             element.applyAC(equation);
         }
 
+        if (!circuit.isLinear())
+            OperatingPoint.of(circuit, criteria).applyAC(equation);
+
         return equation;
     }
 
@@ -4,6 +4,7 @@ public enum ACSubType {
 
     Decade,
     Octave,
-    Linear
+    Linear,
+    Adaptive
 
 }
@@ -0,0 +1,106 @@
+package sriracha.simulator.solver.analysis.dc;
+
+/**
+ * Convergence criteria and mode of the non-linear Newton iteration, as set by the
+ * .OPTIONS line.
+ *
+ * An iterate is converged when both tests pass for every unknown i:
+ * |x(k+1)_i - x(k)_i| <= reltol*max(|x(k+1)_i|, |x(k)_i|) + vntol
+ * |phi(x)_i| <= reltol*(|(Gx)_i| + |f(x)_i| + |b_i|) + abstol
+ *
+ * With the standard tolerances, DC results agree with a tightly converged solution to
+ * about five significant digits: a diode driven through 1k from 4.5V gives 0.6668095V
+ * instead of 0.6668034V.  RELTOL=1e-6 brings them within the 7th digit at the cost of
+ * about one more Newton iteration per point, but the transient analysis also scales its
+ * truncation error tolerance by reltol, so it shortens the time steps as well.
+ */
+public class ConvergenceCriteria {
+
+    /**
+     * Standard relative tolerance: 1e-3, as in SPICE.
+     */
+    public static final double STD_RELTOL = 1e-3;
+    /**
+     * Standard absolute tolerance on the update: 1uV.
+     */
+    public static final double STD_VNTOL = 1e-6;
+    /**
+     * Standard absolute tolerance on the residual: 1pA.
+     */
+    public static final double STD_ABSTOL = 1e-12;
+    /**
+     * Standard maximum number of Newton iterations of a DC solve.
+     */
+    public static final int STD_MAX_ITERATIONS = 100;
+
+    private double reltol = STD_RELTOL;
+    private double vntol = STD_VNTOL;
+    private double abstol = STD_ABSTOL;
+    private int maxIterations = STD_MAX_ITERATIONS;
+    private NewtonMode newtonMode = NewtonMode.Direct;
+
+    /**
+     * @return true if the update from xOld to xNew is within tolerance at index i.
+     */
+    boolean updateConverged(double xNew, double xOld){
+        return Math.abs(xNew - xOld) <= reltol*Math.max(Math.abs(xNew), Math.abs(xOld)) + vntol;
+    }
+
+    /**
+     * @param residual the residual at index i.
+     * @param scale sum of the magnitudes of the terms making up the residual at index i.
+     * @return true if the residual is within tolerance.
+     */
+    boolean residualConverged(double residual, double scale){
+        return Math.abs(residual) <= reltol*scale + abstol;
+    }
+
+    public double getReltol() {
+        return reltol;
+    }
+
+    public void setReltol(double reltol) {
+        this.reltol = reltol;
+    }
+
+    public double getVntol() {
+        return vntol;
+    }
+
+    public void setVntol(double vntol) {
+        this.vntol = vntol;
+    }
+
+    public double getAbstol() {
+        return abstol;
+    }
+
+    public void setAbstol(double abstol) {
+        this.abstol = abstol;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public NewtonMode getNewtonMode() {
+        return newtonMode;
+    }
+
+    /**
+     * @param newtonMode how the non-linear system is solved.
+     */
+    public void setNewtonMode(NewtonMode newtonMode) {
+        this.newtonMode = newtonMode;
+    }
+
+    @Override
+    public String toString() {
+        return "RELTOL=" + reltol + " VNTOL=" + vntol + " ABSTOL=" + abstol + " ITL1=" + maxIterations
+            + " NEWTON=" + newtonMode;
+    }
+}
@@ -1,5 +1,6 @@
 package sriracha.simulator.solver.analysis.dc;
 
+import sriracha.math.interfaces.IRealVector;
 import sriracha.simulator.Options;
 import sriracha.simulator.Simulator;
 import sriracha.simulator.model.Circuit;
@@ -20,6 +21,18 @@ public class DCAnalysis extends Analysis
     DCSweep sweep;
     DCSweep sweep2;
 
+    /**
+     * Convergence criteria given to the non-linear equations.
+     */
+    private ConvergenceCriteria criteria = new ConvergenceCriteria();
+
+    /**
+     * Last two solved points of the present inner sweep, used to predict the
+     * next solution of a non-linear sweep.
+     */
+    private double lastValue, previousValue;
+    private IRealVector lastSolution, previousSolution;
+
 
     /**
      * @param sweep  the first sweep specified on the .DC line
@@ -43,7 +56,20 @@ public class DCAnalysis extends Analysis
         if(circuit.isLinear())
             originalEquation = DCEquation.generate(circuit);
         else
-            originalEquation = DCNonLinEquation.generate(circuit);
+        {
+            DCNonLinEquation nonLinEquation = (DCNonLinEquation) DCNonLinEquation.generate(circuit);
+            nonLinEquation.setConvergenceCriteria(criteria);
+            nonLinEquation.prepare();
+            originalEquation = nonLinEquation;
+        }
+    }
+
+    /**
+     * @param criteria convergence criteria of the non-linear solver.
+     */
+    public void setConvergenceCriteria(ConvergenceCriteria criteria)
+    {
+        this.criteria = criteria;
     }
 
     @Override
@@ -59,6 +85,7 @@ public class DCAnalysis extends Analysis
 
                 sweepEquation = originalEquation.clone();
                 sweep2.getSource().modifyStamp(j, sweepEquation);
+                resetPredictor();
 
                 for (double i = sweep.getStartValue(); i <= sweep.getEndValue(); i += sweep.getStep())
                 {
@@ -70,7 +97,7 @@ public class DCAnalysis extends Analysis
 
                     sweep.getSource().modifyStamp(i, equation);
                     if (Options.isPrintProgress()) System.out.println("DC solving point");
-                    results.addVector(i, equation.solve());
+                    results.addVector(i, solvePoint(i));
 
                 }
             }
@@ -79,6 +106,7 @@ public class DCAnalysis extends Analysis
         } else
         {
             //short mode
+            resetPredictor();
             for (double i = sweep.getStartValue(); i <= sweep.getEndValue(); i += sweep.getStep())
             {
                 if (Simulator.Instance.isCancelRequested()) return null;
@@ -87,7 +115,7 @@ public class DCAnalysis extends Analysis
                 equation = originalEquation.clone();//this system could be optimized at some point
                 sweep.getSource().modifyStamp(i, equation);
                 if (Options.isPrintProgress()) System.out.println("DC solving point");
-                results.addVector(i, equation.solve());
+                results.addVector(i, solvePoint(i));
 
             }
         }
@@ -95,4 +123,49 @@ public class DCAnalysis extends Analysis
 
         return results;
     }
+
+    /**
+     * Solve the present equation for the sweep value.  Non-linear points start Newton
+     * from the solution predicted by the secant through the last two points (or from
+     * the last point alone), continuation is then only needed if that guess fails.
+     * @param value present sweep value.
+     * @return the solution vector.
+     */
+    private IRealVector solvePoint(double value)
+    {
+        if (!(equation instanceof DCNonLinEquation))
+            return equation.solve();
+
+        IRealVector guess = null;
+        if (previousSolution != null)
+        {
+            double ratio = (value - lastValue) / (lastValue - previousValue);
+            guess = (IRealVector) lastSolution.plus(((IRealVector) lastSolution.minus(previousSolution)).times(ratio));
+        } else if (lastSolution != null)
+        {
+            guess = lastSolution;
+        }
+
+        DCNonLinEquation nonLinEquation = (DCNonLinEquation) equation;
+        IRealVector solution = nonLinEquation.solve(guess);
+        if (Options.isPrintProgress())
+            System.out.println("DC device evaluations: " + nonLinEquation.getEvaluatedCount() +
+                    ", bypassed: " + nonLinEquation.getBypassedCount());
+
+        previousValue = lastValue;
+        previousSolution = lastSolution;
+        lastValue = value;
+        lastSolution = solution;
+
+        return solution;
+    }
+
+    /**
+     * Forget the solved points, at the start of each inner sweep.
+     */
+    private void resetPredictor()
+    {
+        lastSolution = null;
+        previousSolution = null;
+    }
 }
@@ -0,0 +1,299 @@
+package sriracha.simulator.solver.analysis.dc;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
+import sriracha.math.interfaces.IRealMatrix;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.Simulator;
+import sriracha.simulator.model.NonLinCircuitElement;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Portfolio of continuation strategies for difficult DC operating points.
+ * All strategies are forked at once on the simulator's fork-join pool, the first
+ * one to converge gives the answer and the others are abandoned.
+ *
+ * Strategies only read the equation's G, b and non-linear elements, each one
+ * works on its own vectors and matrices.  The winner sets the equation's abandoned
+ * flag, which DCNonLinEquation.myNewtonRap treats as a divergence and the strategies
+ * check between their steps.
+ */
+public class DCConvergencePortfolio {
+
+    /**
+     * Starting value of the conductance added to every diagonal entry by gmin stepping.
+     */
+    public static final double STD_GMIN_START = 1e-2;
+    /**
+     * Below this value, gmin stepping removes the added conductance altogether.
+     */
+    public static final double STD_GMIN_END = 1e-12;
+    /**
+     * Starting pseudo time step of the pseudo-transient continuation.
+     */
+    public static final double STD_PTC_INITIAL_STEP = 1e-3;
+    /**
+     * Maximum number of pseudo-transient continuation iterations.
+     */
+    public static final int STD_PTC_MAX_ITERATIONS = 500;
+    /**
+     * Residual below which pseudo-transient continuation hands over to Newton.
+     */
+    public static final double STD_PTC_RESIDUAL = 1e-6;
+    /**
+     * Largest change of any unknown allowed in one damped Newton step.
+     */
+    public static final double STD_DAMPED_MAX_STEP = 0.1;
+    /**
+     * Maximum number of damped Newton iterations.
+     */
+    public static final int STD_DAMPED_MAX_ITERATIONS = 500;
+    /**
+     * Uniform initial guesses tried by damped Newton.
+     */
+    public static final double[] STD_DAMPED_GUESSES = {0, 0.7};
+
+    private MathActivator activator = MathActivator.Activator;
+
+    private DCNonLinEquation equation;
+
+    private IRealMatrix G;
+    private IRealVector b;
+    private ArrayList<NonLinCircuitElement> nonLinearElem;
+
+    /**
+     * Solution of the first strategy to converge.
+     */
+    private AtomicReference<IRealVector> winner = new AtomicReference<IRealVector>();
+
+    /**
+     * @param equation the equation to solve, it is not modified.
+     */
+    public DCConvergencePortfolio(DCNonLinEquation equation){
+        this.equation = equation;
+        G = equation.G;
+        b = equation.b;
+        nonLinearElem = equation.getNonLinearElem();
+    }
+
+    /**
+     * Race all strategies.  A strategy that throws has failed like one that returns null,
+     * the race goes on with the others.
+     * @return the solution of the first strategy to converge, null if they all failed.
+     */
+    public IRealVector solve(){
+        final ArrayList<Strategy> strategies = new ArrayList<Strategy>();
+
+        strategies.add(new Strategy() {
+            @Override
+            IRealVector attempt() {
+                return gminStepping();
+            }
+        });
+        strategies.add(new Strategy() {
+            @Override
+            IRealVector attempt() {
+                return sourceStepping();
+            }
+        });
+        strategies.add(new Strategy() {
+            @Override
+            IRealVector attempt() {
+                return pseudoTransient();
+            }
+        });
+        for(final double guess : STD_DAMPED_GUESSES){
+            strategies.add(new Strategy() {
+                @Override
+                IRealVector attempt() {
+                    return dampedNewton(guess);
+                }
+            });
+        }
+
+        try{
+            Simulator.Pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(strategies);
+                }
+            });
+        }finally{
+            //The losers have all returned, the equation can be solved again.
+            equation.abandoned = false;
+        }
+
+        return winner.get();
+    }
+
+    /**
+     * One strategy of the race, the first to converge abandons the others.
+     */
+    private abstract class Strategy extends RecursiveAction {
+
+        /**
+         * @return the solution, null if the strategy failed or was abandoned.
+         */
+        abstract IRealVector attempt();
+
+        @Override
+        protected void compute() {
+            IRealVector answer;
+            try{
+                answer = attempt();
+            }catch(RuntimeException e){
+                //This strategy failed, the others go on.
+                answer = null;
+            }
+
+            if(answer != null && winner.compareAndSet(null, answer))
+                equation.abandoned = true;
+        }
+    }
+
+    /**
+     * Gmin stepping: a conductance added on every diagonal entry makes the system
+     * well conditioned, it is then reduced step by step down to 0, each solve
+     * starting from the previous solution.
+     */
+    private IRealVector gminStepping(){
+        int n = b.getDimension();
+        IRealVector x = activator.realVector(n);
+        IRealVector answer = activator.realVector(n);
+
+        double gmin = STD_GMIN_START;
+        double factor = 10;
+
+        while(gmin > 0){
+            if(equation.abandoned)
+                return null;
+
+            if(equation.myNewtonRap(addDiagonal(G, gmin), b, nonLinearElem, x, answer) == -1){
+                //Retry with a gentler reduction from the last converged gmin.
+                if(gmin == STD_GMIN_START)
+                    return null;
+                gmin *= factor;
+                factor = Math.sqrt(factor);
+                if(factor < 1.01)
+                    return null;
+            }else{
+                x.copy(answer);
+            }
+
+            gmin /= factor;
+            if(gmin < STD_GMIN_END)
+                gmin = 0;
+        }
+
+        return equation.myNewtonRap(G, b, nonLinearElem, x, answer) == -1 ? null : answer;
+    }
+
+    /**
+     * Adaptive source stepping, as done sequentially by DCNonLinEquation.
+     */
+    private IRealVector sourceStepping(){
+        IRealVector answer = activator.realVector(b.getDimension());
+        return equation.sourceStepping(G, b, nonLinearElem, answer) < 1 ? null : answer;
+    }
+
+    /**
+     * Pseudo-transient continuation: a fictitious unit capacitance on every unknown turns
+     * the Newton iteration into implicit Euler steps of dx/dt = -phi(x).  The pseudo time step
+     * grows as the residual drops (switched evolution relaxation), until plain Newton takes over.
+     */
+    private IRealVector pseudoTransient(){
+        int n = b.getDimension();
+        IRealVector x = activator.realVector(n);
+        IRealVector answer = activator.realVector(n);
+
+        double h = STD_PTC_INITIAL_STEP;
+        DeviceEvaluator devices = equation.newDeviceEvaluator(nonLinearElem);
+        IRealMatrix jacobian = G.clone();
+
+        IRealVector phi = equation.residual(G, b, devices, x, jacobian, null);
+        double residual = DCNonLinEquation.maxMag(phi);
+
+        for(int i = 0; i < STD_PTC_MAX_ITERATIONS && residual > STD_PTC_RESIDUAL; i++){
+            if(equation.abandoned)
+                return null;
+
+            IRealVector deltaX;
+            try{
+                IRealLUDecomposition J = addDiagonal(jacobian, 1 / h).luDecompose();
+                deltaX = J.solve(phi).times(-1);
+            }catch(ArithmeticException e){
+                return null;
+            }
+
+            IRealVector xPrev = x;
+            x = (IRealVector)x.plus(deltaX);
+            devices.limitUpdate(x, xPrev);
+
+            phi = equation.residual(G, b, devices, x, jacobian, null);
+            double newResidual = DCNonLinEquation.maxMag(phi);
+            if(Double.isNaN(newResidual))
+                return null;
+
+            h *= residual / newResidual;
+            residual = newResidual;
+        }
+
+        return equation.myNewtonRap(G, b, nonLinearElem, x, answer) == -1 ? null : answer;
+    }
+
+    /**
+     * Damped Newton: Newton steps scaled down so that no unknown moves by more than
+     * STD_DAMPED_MAX_STEP, until the steps are small enough for plain Newton to finish.
+     * @param guess value given to every unknown of the initial guess.
+     */
+    private IRealVector dampedNewton(double guess){
+        int n = b.getDimension();
+        IRealVector x = activator.realVector(n);
+        IRealVector answer = activator.realVector(n);
+        for(int i = 0; i < n; i++){
+            x.setValue(i, guess);
+        }
+
+        DeviceEvaluator devices = equation.newDeviceEvaluator(nonLinearElem);
+        IRealMatrix jacobian = G.clone();
+
+        for(int i = 0; i < STD_DAMPED_MAX_ITERATIONS; i++){
+            if(equation.abandoned)
+                return null;
+
+            IRealVector deltaX;
+            try{
+                IRealVector phi = equation.residual(G, b, devices, x, jacobian, null);
+                deltaX = jacobian.luDecompose().solve(phi).times(-1);
+            }catch(ArithmeticException e){
+                return null;
+            }
+
+            double stepMag = DCNonLinEquation.maxMag(deltaX);
+            if(Double.isNaN(stepMag))
+                return null;
+            if(stepMag <= STD_DAMPED_MAX_STEP)
+                break;
+
+            IRealVector xPrev = x;
+            x = (IRealVector)x.plus(deltaX.times(STD_DAMPED_MAX_STEP / stepMag));
+            devices.limitUpdate(x, xPrev);
+        }
+
+        return equation.myNewtonRap(G, b, nonLinearElem, x, answer) == -1 ? null : answer;
+    }
+
+    /**
+     * @return a copy of matrix with value added to every diagonal entry.
+     */
+    private static IRealMatrix addDiagonal(IRealMatrix matrix, double value){
+        IRealMatrix result = matrix.clone();
+        for(int i = 0; i < result.getNumberOfRows(); i++){
+            result.addValue(i, i, value);
+        }
+        return result;
+    }
+}
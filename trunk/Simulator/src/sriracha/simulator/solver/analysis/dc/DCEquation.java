@@ -1,6 +1,7 @@
 package sriracha.simulator.solver.analysis.dc;
 
 import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
 import sriracha.math.interfaces.IRealMatrix;
 import sriracha.math.interfaces.IRealVector;
 import sriracha.simulator.Options;
@@ -93,6 +94,25 @@ public class DCEquation
         b.addValue(i, d);
     }
 
+    /**
+     * Factor G, for callers solving the same matrix for many source vectors,
+     * or for adjoint solves G'*y = c through solveTranspose.
+     *
+     * @return the LU factors of G.
+     */
+    public IRealLUDecomposition decompose()
+    {
+        return G.luDecompose();
+    }
+
+    /**
+     * @return a copy of the source vector b.
+     */
+    public IRealVector getSourceVector()
+    {
+        return b.clone();
+    }
+
     public DCEquation clone()
     {
         return new DCEquation(G.clone(), b.clone());
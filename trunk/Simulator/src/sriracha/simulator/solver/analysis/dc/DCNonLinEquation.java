@@ -1,16 +1,20 @@
 package sriracha.simulator.solver.analysis.dc;
 
 import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
 import sriracha.math.interfaces.IRealMatrix;
 import sriracha.math.interfaces.IRealVector;
 import sriracha.simulator.Options;
 import sriracha.simulator.model.Circuit;
 import sriracha.simulator.model.CircuitElement;
 import sriracha.simulator.model.NonLinCircuitElement;
+import sriracha.simulator.model.SubCircuit;
 import sriracha.simulator.model.elements.Diode;
+import sriracha.simulator.solver.analysis.AnalysisException;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created with IntelliJ IDEA.
@@ -22,9 +26,48 @@ import java.util.Iterator;
 public class DCNonLinEquation extends DCEquation{
 
     public static final double STD_H = 1e-9;
-    public static final double STD_THRESHOLD = 9e-15;
     public static final int STD_DIVERGENCE_TOLERANCE = 5;
-    public static final int STD_CONT_METHOD_ATTEMPTS = 3;
+    /**
+     * Smallest source stepping increment tried before giving up.
+     */
+    public static final double STD_MIN_ALPHA_STEP = 1e-6;
+    /**
+     * Factor applied to the source stepping increment after a quickly converged step.
+     */
+    public static final double STD_ALPHA_STEP_GROWTH = 2;
+    /**
+     * A source step converging within this many Newton iterations counts as quick.
+     */
+    public static final int STD_FAST_CONVERGENCE_ITERATIONS = 6;
+    /**
+     * A factored Jacobian is kept as long as each Newton correction is at most
+     * this fraction of the previous one.
+     */
+    public static final double STD_REUSE_CONTRACTION = 0.25;
+    /**
+     * Number of iterations a factored Jacobian is used for in Shamanskii mode.
+     */
+    public static final int STD_SHAMANSKII_PERIOD = 3;
+    /**
+     * Largest change of a device's controlling voltage between two evaluations for
+     * which the device evaluation is bypassed.
+     */
+    public static final double STD_BYPASS_TOLERANCE = 1e-6;
+    /**
+     * Armijo constant: a step of length lambda is accepted if it reduces ||phi||^2
+     * by at least a fraction 2*STD_ARMIJO_SLOPE*lambda.
+     */
+    public static final double STD_ARMIJO_SLOPE = 1e-4;
+    /**
+     * Smallest fraction of the Newton step tried by the line search.
+     */
+    public static final double STD_MIN_LINE_STEP = 1e-3;
+    /**
+     * Newton corrections at most this large are taken without line search: the iteration
+     * is then close enough to converge quadratically, and the residual may be at round-off
+     * level where the Armijo test is meaningless.
+     */
+    public static final double STD_LINE_SEARCH_THRESHOLD = 1e-6;
 
     /**
      * Factory object for the Math module's objects.
@@ -34,6 +77,78 @@ public class DCNonLinEquation extends DCEquation{
     private IRealVector f;
 
     private ArrayList<NonLinCircuitElement> nonLinearElem;
+
+    /**
+     * Policy deciding when the Newton iteration refactors its Jacobian.
+     */
+    private JacobianUpdate jacobianUpdate = JacobianUpdate.Chord;
+
+    /**
+     * When plain Newton fails, race several continuation strategies on the simulator's
+     * fork-join pool instead of running source stepping alone.
+     */
+    private boolean parallelFallback = true;
+
+    /**
+     * Set by DCConvergencePortfolio once a strategy has converged: the Newton iterations
+     * and source stepping of the other strategies then give up.
+     */
+    volatile boolean abandoned;
+
+    /**
+     * Reuse the last evaluation of devices whose controlling voltages barely moved.
+     */
+    private boolean bypass = true;
+
+    /**
+     * Backtrack along Newton steps that do not reduce the residual enough.
+     */
+    private boolean lineSearch = true;
+
+    /**
+     * Solve the Newton corrections with preconditioned GMRES instead of factoring
+     * the Jacobian (see JFNKSolver).
+     */
+    private boolean jacobianFree = false;
+
+    /**
+     * Iterate Newton on the Schur complement system of the unknowns touched by
+     * non-linear elements (see SchurComplement).
+     */
+    private boolean condensation = true;
+
+    /**
+     * Condensation of G, built by prepare or the first solve and dropped when G is stamped.
+     */
+    private SchurComplement schur;
+    private boolean schurBuilt = false;
+
+    /**
+     * Solve the subcircuit instances by their own Newton iterations under a top-level
+     * Newton iteration (see HierarchicalNewton).
+     */
+    private boolean hierarchical = false;
+
+    /**
+     * Partition along the subcircuit instances, built by prepare or the first hierarchical
+     * solve and dropped when G is stamped.
+     */
+    private HierarchicalNewton hierarchy;
+    private boolean hierarchyBuilt = false;
+
+    /**
+     * Top-level subcircuit instances of the circuit the equation was generated from.
+     */
+    private ArrayList<SubCircuit> subCircuits = new ArrayList<SubCircuit>();
+
+    /**
+     * Tolerances and iteration limit of the Newton iteration.
+     */
+    private ConvergenceCriteria criteria = new ConvergenceCriteria();
+
+    //Number of device evaluations done and bypassed by the solves of this equation.
+    private AtomicLong evaluatedCount = new AtomicLong();
+    private AtomicLong bypassedCount = new AtomicLong();
     /**
      * private constructor creating a new DCNonLinEquation object with matrix equation
      * size indicated by circuitNodeCount.
@@ -59,9 +174,38 @@ public class DCNonLinEquation extends DCEquation{
         clone.G.copy(this.G);
         clone.b.copy(this.b);
         clone.nonLinearElem = (ArrayList<NonLinCircuitElement>)nonLinearElem.clone();
+        copySettings(clone);
+        clone.condensation = condensation;
+        clone.schur = schur;
+        clone.schurBuilt = schurBuilt;
+        clone.hierarchical = hierarchical;
+        clone.subCircuits = subCircuits;
+        clone.hierarchy = hierarchy;
+        clone.hierarchyBuilt = hierarchyBuilt;
         return clone;
     }
 
+    /**
+     * Copy the solver settings of this equation to another one.
+     */
+    private void copySettings(DCNonLinEquation target){
+        target.jacobianUpdate = jacobianUpdate;
+        target.parallelFallback = parallelFallback;
+        target.bypass = bypass;
+        target.lineSearch = lineSearch;
+        target.jacobianFree = jacobianFree;
+        target.criteria = criteria;
+    }
+
+    @Override
+    public void applyMatrixStamp(int i, int j, double value){
+        super.applyMatrixStamp(i, j, value);
+        schur = null;
+        schurBuilt = false;
+        hierarchy = null;
+        hierarchyBuilt = false;
+    }
+
     /**
      * This method acts as the official constructor of DCNonLinEquation objects.
      * The method apply the stamps of the circuit elements to the matrix equations.
@@ -81,6 +225,8 @@ public class DCNonLinEquation extends DCEquation{
         for (CircuitElement element : circuit.getElements())
         {
             element.applyDC(equation);
+            if (element instanceof SubCircuit)
+                equation.subCircuits.add((SubCircuit) element);
         }
         return equation;
     }
@@ -91,6 +237,19 @@ public class DCNonLinEquation extends DCEquation{
      * @return
      */
     public IRealVector solve()
+    {
+        return solve(null);
+    }
+
+    /**
+     * Solve starting Newton from the given guess, typically the solution of a nearby
+     * point of a sweep.  If Newton does not converge from there, the usual path from
+     * the zero vector (with continuation fallbacks) is taken.
+     * @param guess initial guess of node voltages, null to start from the zero vector.
+     * @return the solution vector.
+     * @throws AnalysisException if no strategy converges.
+     */
+    public IRealVector solve(IRealVector guess)
     {
 
         //Note sure about this...
@@ -103,66 +262,209 @@ public class DCNonLinEquation extends DCEquation{
             System.out.println(b);
         }
 
-        //create a new f vector
+        if(hierarchical && !subCircuits.isEmpty()){
+            IRealVector answer = solveHierarchical(guess);
+            if(answer != null)
+                return answer;
+        }
+
+        if(condensation){
+            buildSchur();
+            if(schur != null)
+                return solveCondensed(guess);
+        }
+
+        return solveFull(guess);
+    }
+
+    /**
+     * Run Newton from the guess alone, without the continuation fallbacks of solve, for
+     * callers that react to a failure themselves (a transient analysis shortens its time step).
+     * @param guess initial guess of node voltages.
+     * @param answer the vector in which the solution is stored.
+     * @return -1 if the iteration failed, otherwise the number of iterations needed to converge.
+     */
+    public int solveFrom(IRealVector guess, IRealVector answer){
+        return newton(G, b, nonLinearElem, guess, answer);
+    }
+
+    /**
+     * Build the structures solve reuses from one call to the next, so that the clones made
+     * afterwards (one per sweep point) share them instead of building their own.
+     */
+    public void prepare(){
+        if(hierarchical && !subCircuits.isEmpty())
+            buildHierarchy();
+        if(condensation)
+            buildSchur();
+    }
+
+    private void buildSchur(){
+        if(!schurBuilt){
+            schur = SchurComplement.build(G, nonLinearElem);
+            schurBuilt = true;
+        }
+    }
+
+    private void buildHierarchy(){
+        if(!hierarchyBuilt){
+            hierarchy = HierarchicalNewton.build(this, subCircuits);
+            hierarchyBuilt = true;
+        }
+    }
+
+    /**
+     * Two-level Newton over the subcircuit instances, from the guess then from zero.
+     * @return the solution, null if the iteration failed or the circuit cannot be partitioned.
+     */
+    private IRealVector solveHierarchical(IRealVector guess){
+        buildHierarchy();
+        if(hierarchy == null)
+            return null;
+
+        IRealVector answer = activator.realVector(b.getDimension());
+        if(guess != null && hierarchy.solve(this, b, guess, answer) != -1)
+            return answer;
+        if(hierarchy.solve(this, b, activator.realVector(b.getDimension()), answer) != -1)
+            return answer;
+        return null;
+    }
+
+    /**
+     * Solve the Schur complement system of the non-linear unknowns, then recover the
+     * linear unknowns by back-substitution.
+     */
+    private IRealVector solveCondensed(IRealVector guess){
+        DCNonLinEquation reduced = new DCNonLinEquation(schur.getReducedSize());
+        reduced.G.copy(schur.getMatrix());
+        reduced.b.copy(schur.reduce(b));
+        reduced.nonLinearElem = schur.getElements();
+        copySettings(reduced);
+        reduced.evaluatedCount = evaluatedCount;
+        reduced.bypassedCount = bypassedCount;
+
+        IRealVector xN = reduced.solveFull(guess == null ? null : schur.restrict(guess));
+        return schur.expand(xN, b);
+    }
+
+    /**
+     * Solve the full system: Newton from the guess, then from zero, then the
+     * continuation fallbacks.
+     */
+    private IRealVector solveFull(IRealVector guess){
         int n = b.getDimension();
+        IRealVector answer = activator.realVector(n);
+
+        if(guess != null && newton(G, b, nonLinearElem, guess, answer) != -1)
+            return answer;
+
+        //Plain Newton first, most circuits need nothing more.
+        if(newton(G, b, nonLinearElem, activator.realVector(n), answer) != -1)
+            return answer;
+
+        //The portfolio strategies factor the Jacobian, which the Jacobian-free mode avoids.
+        if(parallelFallback && !jacobianFree){
+            IRealVector raced = new DCConvergencePortfolio(this).solve();
+            if(raced != null)
+                return raced;
+            //Source stepping is one of the strategies, running it again would fail the same way.
+            throw new AnalysisException("DC operating point did not converge, no continuation " +
+                "strategy succeeded");
+        }
 
         return myNewtonRapComp(G, b, nonLinearElem);
     }
 
-    //The following is a temporary method to build up Newton Iteration solver.
+    /**
+     * Solve the non-linear system with adaptive source stepping continuation.
+     * @return the solution vector.
+     * @throws AnalysisException if the continuation could not reach alpha = 1.
+     */
     public IRealVector myNewtonRapComp(IRealMatrix G, IRealVector b,
         ArrayList<NonLinCircuitElement> nonLinearElem){
 
+        IRealVector answer = activator.realVector(b.getDimension());
+        double alpha = sourceStepping(G, b, nonLinearElem, answer);
+        if(alpha < 1){
+            if(Options.isPrintProgress())
+                System.out.println("DC source stepping stopped at source factor " + alpha);
+            throw new AnalysisException("DC operating point did not converge, source stepping " +
+                "stopped at source factor " + alpha);
+        }
+
+        return answer;
+    }
+
+    /**
+     * Adaptive source stepping continuation.
+     * The source vector is scaled by alpha going from 0 to 1, each step starting
+     * Newton from the solution of the last converged alpha.  The alpha increment
+     * starts at 1 (plain Newton), grows after steps that converge quickly and is
+     * halved on failure, retrying from the last converged point.
+     * @param answer the vector in which the last converged point is stored.
+     * @return the source factor alpha of the last converged point, 1 on success.
+     */
+    double sourceStepping(IRealMatrix G, IRealVector b,
+        ArrayList<NonLinCircuitElement> nonLinearElem, IRealVector answer){
+
         int size = b.getDimension();
 
-        //The scale factor for the b vector.
+        //The scale factor for the b vector, at the last converged point.
         double alpha = 0;
-        //Amount of steps toward the final alpha = 1
-        int steps = 100;
-        //integer indicating whether the continuation method attempt was successful.
-        //  (0 = success, -1 = failure)
-        int success = -1;
-        //integer indicating the amount of failed attempts at continuation method
-        int failedAttempts = 0;
-
-        //The node voltage vector (guess)
-        IRealVector x0 = activator.realVector(size);
-        //The final computed node voltage vector
-        IRealVector answer = activator.realVector(size);
-
-        while(success == -1 && failedAttempts < STD_CONT_METHOD_ATTEMPTS){
-            //skip 0th step, where the answer is going to be a zero vector.
-            for(int i = 0; i < steps; i++){
-
-                alpha += 1.0/steps;
-
-                success = myNewtonRap(G, (b.times(alpha)), nonLinearElem, x0, answer);
-                //When divergence occurs, reset all values and chose a larger amounts of
-                //steps to aim for a better change of convergence.  Restart continuation method.
-                if(success == -1){
-                    alpha = 0;
-                    steps *= 100;
-                    x0.clear();
-                    failedAttempts++;
-                    break;
-                }
+        //Increment of alpha for the next step
+        double step = 1;
+
+        //The node voltage vector at the last converged point (alpha = 0 gives x = 0)
+        answer.clear();
+        //The node voltage vector computed by the present step
+        IRealVector x = activator.realVector(size);
+
+        while(alpha < 1){
+            double nextAlpha = Math.min(1, alpha + step);
+
+            int iterations = newton(G, b.times(nextAlpha), nonLinearElem, answer, x);
 
-                x0.copy(answer);
+            if(iterations == -1){
+                //Retry a smaller step from the last converged point.
+                step /= 2;
+                if(step < STD_MIN_ALPHA_STEP || abandoned)
+                    break;
+            }else{
+                alpha = nextAlpha;
+                answer.copy(x);
+                if(iterations <= STD_FAST_CONVERGENCE_ITERATIONS)
+                    step *= STD_ALPHA_STEP_GROWTH;
             }
         }
 
-        return answer;
+        return alpha;
+    }
+
+    /**
+     * Run the Newton iteration of the selected mode: Jacobian-free Newton-Krylov or
+     * myNewtonRap.
+     * @return -1 if the iteration failed, otherwise the number of iterations needed to converge.
+     */
+    private int newton(IRealMatrix G, IRealVector b,
+        ArrayList<NonLinCircuitElement> nonLinearElem, IRealVector xGuess, IRealVector answer){
+        if(jacobianFree)
+            return new JFNKSolver(this, G, b, nonLinearElem).solve(xGuess, answer);
+        return myNewtonRap(G, b, nonLinearElem, xGuess, answer);
     }
 
     /**
      * A Newton Raphson iteration method which is taylored to solve
      * the non-linear case.
+     * Each correction is obtained from an LU solve of the Jacobian.  Depending on
+     * jacobianUpdate, the factored Jacobian may be kept over several iterations
+     * while the corrections keep shrinking fast enough, but the iteration only
+     * concludes on a step taken with a freshly factored Jacobian.
      * @param G
      * @param b
      * @param xGuess initial guess of node voltages
      * @param answer the vector in which the final result is stored
-     * @return signal variable indicating whether the N-R iter converged or not.
-     *      (-1 = divergent, 0 = convergent)
+     * @return -1 if the N-R iteration diverged or did not converge within the maximum
+     *      number of iterations, otherwise the number of iterations needed to converge.
      */
     public int myNewtonRap(IRealMatrix G, IRealVector b,
         ArrayList<NonLinCircuitElement> nonLinearElem, IRealVector xGuess, IRealVector answer)
@@ -180,60 +482,344 @@ public class DCNonLinEquation extends DCEquation{
 
         double prevChangeMag = Integer.MAX_VALUE;
         double presentChangeMag;
+        //Whether the last update was within tolerance
+        boolean updateConverged = false;
+        //Magnitude of the terms making up each entry of the residual
+        double[] scale = new double[n];
 
         //initial guess
         IRealVector x0 = activator.realVector(n);
         x0.copy(xGuess);
-        //The non-linear element contribution vector
-        IRealVector f0 = activator.realVector(n);
-        //The Hessian matrix
-        IRealMatrix df0 = activator.realMatrix(n,n);
-
-        IRealVector deltaX = activator.realVector(n);
-        IRealVector phi = activator.realVector(n);
-        //The Jacobian matrix
-        IRealMatrix J = activator.realMatrix(n,n);
-
-        do{
-
-            f0.clear();
-            df0.clear();
 
-            //Get the non-linear contribution of the present node voltage guess vector
-            for(int i = 0; i < nonLinearElem.size(); i++){
-                nonLinearElem.get(i).getNonLinContribution(f0,x0);
-                nonLinearElem.get(i).getHessianContribution(df0,x0);
+        IRealVector deltaX;
+        IRealVector phi;
+        //The factored Jacobian matrix, possibly from an earlier iteration
+        IRealLUDecomposition J = null;
+        //Jacobian matrix, built on a copy of G and restamped at each refactorization
+        IRealMatrix jacobian = G.clone();
+        //Working storage for the non-linear element evaluations
+        DeviceEvaluator devices = newDeviceEvaluator(nonLinearElem);
+        //iterations done with the present factorization
+        int factorAge = 0;
+        boolean refactor = true;
+        int iterations = 0;
+
+        while(true){
+            //An abandoned attempt (losing a DCConvergencePortfolio race) stops here.
+            if(abandoned)
+                return -1;
+
+            //phi(x) = Gx + f(x) - b, and when refactoring d(phi(x))/dx = G + df(x)/dx
+            //from the same device evaluation.
+            phi = residual(G, b, devices, x0, refactor ? jacobian : null, scale);
+
+            //Converged when the last update and the present residual are both within tolerance.
+            if(updateConverged && residualConverged(phi, scale))
+                break;
+
+            if(iterations == criteria.getMaxIterations())
+                return -1;
+            iterations++;
+
+            if(refactor){
+                try{
+                    J = jacobian.luDecompose();
+                }catch(ArithmeticException e){
+                    return -1;
+                }
+                factorAge = 0;
             }
 
-            //phi(x) = Gx + f(x) - b
-            phi.copy((IRealVector)((G.times(x0)).plus(f0)).minus(b));
-            //d(phi(x))/dx = G + df(x)/dx
-            J.copy((IRealMatrix)G.plus(df0));
-
-
-            J.inverse();
-
             //deltaX = -J' * phi(x)
-            deltaX.copy((IRealVector)J.times(phi).times((-1)));
+            deltaX = J.solve(phi).times(-1);
+            IRealVector xPrev = x0;
             x0 = (IRealVector)x0.plus(deltaX);
+            boolean freshJacobian = factorAge == 0;
+            factorAge++;
+
+            boolean limited = devices.limitUpdate(x0, xPrev);
+
+            presentChangeMag = maxMag(deltaX);
+            if(Double.isNaN(presentChangeMag))
+                return -1;
+
+            //Armijo backtracking on ||phi||, limited steps are already damped by the elements.
+            double lambda = 1;
+            boolean decreased = false;
+            if(lineSearch && !limited && presentChangeMag > STD_LINE_SEARCH_THRESHOLD){
+                double phiNorm = norm(phi);
+                double trialNorm = norm(residual(G, b, devices, x0, null, null));
+                while(!(decreased = trialNorm <= Math.sqrt(1 - 2*STD_ARMIJO_SLOPE*lambda)*phiNorm)
+                    && freshJacobian && lambda/2 >= STD_MIN_LINE_STEP){
+                    lambda /= 2;
+                    x0 = (IRealVector)xPrev.plus(deltaX.times(lambda));
+                    trialNorm = norm(residual(G, b, devices, x0, null, null));
+                }
 
-            presentChangeMag = deltaX.getMaxMag();
-            if(presentChangeMag < prevChangeMag){
+                if(!decreased && !freshJacobian){
+                    //The stale Jacobian gave a poor direction: retry from the same point
+                    //with a fresh one.
+                    x0 = xPrev;
+                    refactor = true;
+                    updateConverged = false;
+                    continue;
+                }
+            }
+
+            //Only a full, unlimited Newton step can conclude the iteration.  A step taken with
+            //a reused Jacobian only contracts linearly, so a small update does not mean a small
+            //error: the concluding step has to come from a freshly factored Jacobian.
+            boolean smallUpdate = !limited && lambda == 1 && updateConverged(x0, xPrev);
+            updateConverged = smallUpdate && freshJacobian;
+
+            if(limited){
+                //A limited iterate is still on its way to the solution: it is neither
+                //converged nor divergent, and the Jacobian has to follow it.
+                flag = 0;
+                refactor = true;
+            }else if(decreased){
+                //The residual dropped enough: progress, even if the corrections grow.
+                //After a damped step, the Jacobian has to follow.
                 flag = 0;
-                prevChangeMag = presentChangeMag;
+                refactor = lambda < 1 || presentChangeMag >= prevChangeMag
+                    || needsRefactor(presentChangeMag / prevChangeMag, factorAge);
+            }else if(presentChangeMag < prevChangeMag){
+                flag = 0;
+                refactor = needsRefactor(presentChangeMag / prevChangeMag, factorAge);
+            }else if(factorAge > 1){
+                //A stale Jacobian is the first suspect, refresh it before counting
+                //this iteration as divergent.
+                refactor = true;
             }else{
                 flag++;
                 //Divergence detected when the largest magnitude of the correcting terms in
                 //deltaX increased for some consecutive iterations.
                 if(flag > STD_DIVERGENCE_TOLERANCE)
                     return -1;
-                prevChangeMag = presentChangeMag;
+                refactor = true;
             }
-
-        }while(presentChangeMag > STD_THRESHOLD);
+            if(smallUpdate && !freshJacobian)
+                refactor = true;
+            prevChangeMag = presentChangeMag;
+        }
 
         answer.copy(x0);
-        return 0;
+        return iterations;
+    }
+
+    /**
+     * @return the largest magnitude of the entries of v, NaN if any entry is NaN
+     *      (IRealVector.getMaxMag skips NaN entries).
+     */
+    static double maxMag(IRealVector v){
+        double max = 0;
+        for(int i = 0; i < v.getDimension(); i++){
+            double value = Math.abs(v.getValue(i));
+            if(Double.isNaN(value))
+                return Double.NaN;
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * @return the Euclidean norm of v.
+     */
+    static double norm(IRealVector v){
+        double sum = 0;
+        for(int i = 0; i < v.getDimension(); i++){
+            sum += v.getValue(i)*v.getValue(i);
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * @return a new evaluator of the given elements, with this equation's bypass setting.
+     */
+    DeviceEvaluator newDeviceEvaluator(ArrayList<NonLinCircuitElement> nonLinearElem){
+        return new DeviceEvaluator(nonLinearElem, bypass ? STD_BYPASS_TOLERANCE : -1);
+    }
+
+    /**
+     * Evaluate the residual of the non-linear system.
+     * @param jacobian a copy of G, or a Jacobian obtained from G by an earlier call, updated
+     *      in place to d(phi(x))/dx = G + df(x)/dx.  Only the entries the non-linear elements
+     *      touch are reset and restamped.  Null to skip the Jacobian.
+     * @param scale array in which the magnitude of the terms of each residual entry,
+     *      |(Gx)_i| + |f(x)_i| + |b_i|, is stored.  Null to skip.
+     * @return phi(x) = Gx + f(x) - b
+     */
+    IRealVector residual(IRealMatrix G, IRealVector b, DeviceEvaluator devices,
+        IRealVector x, IRealMatrix jacobian, double[] scale){
+        //The non-linear element contribution vector
+        IRealVector f0 = activator.realVector(b.getDimension());
+        if(jacobian != null)
+            devices.resetJacobian(jacobian, G);
+        devices.evaluate(x, f0, jacobian);
+        evaluatedCount.addAndGet(devices.getEvaluatedCount());
+        bypassedCount.addAndGet(devices.getBypassedCount());
+
+        IRealVector Gx = (IRealVector)G.times(x);
+        if(scale != null){
+            for(int i = 0; i < scale.length; i++){
+                scale[i] = Math.abs(Gx.getValue(i)) + Math.abs(f0.getValue(i)) + Math.abs(b.getValue(i));
+            }
+        }
+        return (IRealVector)(Gx.plus(f0)).minus(b);
+    }
+
+    /**
+     * @return true if every entry of the update from xOld to xNew is within tolerance.
+     */
+    boolean updateConverged(IRealVector xNew, IRealVector xOld){
+        for(int i = 0; i < xNew.getDimension(); i++){
+            if(!criteria.updateConverged(xNew.getValue(i), xOld.getValue(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param scale magnitude of the terms of each residual entry.
+     * @return true if every entry of the residual is within tolerance.
+     */
+    boolean residualConverged(IRealVector phi, double[] scale){
+        for(int i = 0; i < phi.getDimension(); i++){
+            if(!criteria.residualConverged(phi.getValue(i), scale[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decide whether the Jacobian has to be rebuilt for the next iteration.
+     * @param contraction ratio of the present correction magnitude over the previous one.
+     * @param factorAge number of iterations done with the present factorization.
+     * @return true if the Jacobian should be rebuilt and refactored.
+     */
+    private boolean needsRefactor(double contraction, int factorAge){
+        switch(jacobianUpdate){
+            case Chord:
+                return contraction > STD_REUSE_CONTRACTION;
+            case Shamanskii:
+                return factorAge >= STD_SHAMANSKII_PERIOD || contraction > STD_REUSE_CONTRACTION;
+            default:
+                return true;
+        }
+    }
+
+    public JacobianUpdate getJacobianUpdate() {
+        return jacobianUpdate;
+    }
+
+    /**
+     * @param jacobianUpdate policy deciding when the Newton iteration refactors its Jacobian.
+     */
+    public void setJacobianUpdate(JacobianUpdate jacobianUpdate) {
+        this.jacobianUpdate = jacobianUpdate;
+    }
+
+    public boolean isParallelFallback() {
+        return parallelFallback;
+    }
+
+    /**
+     * @param parallelFallback true to race several continuation strategies in parallel
+     *      when plain Newton fails, false to only use sequential source stepping.
+     */
+    public void setParallelFallback(boolean parallelFallback) {
+        this.parallelFallback = parallelFallback;
+    }
+
+    public ConvergenceCriteria getConvergenceCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Set the tolerances and iteration limit of the Newton iteration, and the solver
+     * mode given by the criteria.
+     * @param criteria convergence criteria and mode of the Newton iteration.
+     */
+    public void setConvergenceCriteria(ConvergenceCriteria criteria) {
+        this.criteria = criteria;
+        jacobianFree = criteria.getNewtonMode() == NewtonMode.JacobianFree;
+        hierarchical = criteria.getNewtonMode() == NewtonMode.Hierarchical;
+    }
+
+    public boolean isLineSearch() {
+        return lineSearch;
+    }
+
+    /**
+     * @param lineSearch whether Newton backtracks along steps that do not reduce
+     *      the residual norm enough (Armijo condition).
+     */
+    public void setLineSearch(boolean lineSearch) {
+        this.lineSearch = lineSearch;
+    }
+
+    public boolean isJacobianFree() {
+        return jacobianFree;
+    }
+
+    /**
+     * @param jacobianFree whether the Newton corrections are solved by GMRES
+     *      preconditioned with an incomplete factorization, without factoring the Jacobian.
+     */
+    public void setJacobianFree(boolean jacobianFree) {
+        this.jacobianFree = jacobianFree;
+    }
+
+    public boolean isHierarchical() {
+        return hierarchical;
+    }
+
+    /**
+     * @param hierarchical whether the subcircuit instances are solved locally by their own
+     *      Newton iterations, the top-level iteration only seeing their Norton equivalents.
+     *      The flat iteration is used if this fails.
+     */
+    public void setHierarchical(boolean hierarchical) {
+        this.hierarchical = hierarchical;
+    }
+
+    public boolean isCondensation() {
+        return condensation;
+    }
+
+    /**
+     * @param condensation whether Newton iterates only on the Schur complement system of
+     *      the unknowns touched by non-linear elements, the linear unknowns being
+     *      recovered by back-substitution.
+     */
+    public void setCondensation(boolean condensation) {
+        this.condensation = condensation;
+    }
+
+    public boolean isBypass() {
+        return bypass;
+    }
+
+    /**
+     * @param bypass whether devices whose controlling voltages moved by less than
+     *      STD_BYPASS_TOLERANCE reuse their last evaluation.
+     */
+    public void setBypass(boolean bypass) {
+        this.bypass = bypass;
+    }
+
+    /**
+     * @return number of device evaluations done by the solves of this equation.
+     */
+    public long getEvaluatedCount() {
+        return evaluatedCount.get();
+    }
+
+    /**
+     * @return number of device evaluations bypassed by the solves of this equation.
+     */
+    public long getBypassedCount() {
+        return bypassedCount.get();
     }
 
     public ArrayList<NonLinCircuitElement> getNonLinearElem() {
@@ -0,0 +1,134 @@
+package sriracha.simulator.solver.analysis.dc;
+
+import sriracha.math.interfaces.IRealMatrix;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.model.NonLinCircuitElement;
+import sriracha.simulator.model.elements.Diode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates the non-linear elements of an equation during Newton iterations.
+ * Diodes are grouped in a DiodeBatch, any other non-linear element is evaluated
+ * through its own getNonLinContribution and getHessianContribution methods.
+ *
+ * An evaluator holds working storage: each Newton iteration (or thread) builds its own.
+ */
+class DeviceEvaluator {
+
+    private List<NonLinCircuitElement> elements;
+
+    private DiodeBatch diodes;
+
+    /**
+     * Elements not handled by a batch.
+     */
+    private ArrayList<NonLinCircuitElement> others;
+
+    /**
+     * Jacobian matrix positions touched by the elements, {row, column}.
+     */
+    private ArrayList<int[]> positions;
+
+    /**
+     * @param elements the non-linear elements.
+     * @param bypassTolerance largest junction voltage change allowing a device to be
+     *      bypassed, negative to disable bypass.
+     */
+    DeviceEvaluator(List<NonLinCircuitElement> elements, double bypassTolerance){
+        this.elements = elements;
+        others = new ArrayList<NonLinCircuitElement>();
+        positions = new ArrayList<int[]>();
+
+        ArrayList<Diode> diodeList = new ArrayList<Diode>();
+        for(NonLinCircuitElement e : elements){
+            if(e.getClass() == Diode.class)
+                diodeList.add((Diode)e);
+            else
+                others.add(e);
+            positions.addAll(Arrays.asList(e.getJacobianPositions()));
+        }
+        diodes = new DiodeBatch(diodeList, bypassTolerance);
+    }
+
+    /**
+     * Add the contributions of all elements at x.
+     * @param x node voltage vector.
+     * @param f vector in which the non-linear currents are added.
+     * @param J Jacobian matrix in which the derivatives are added, null to skip.
+     */
+    void evaluate(IRealVector x, IRealVector f, IRealMatrix J){
+        diodes.evaluate(x, f, J);
+        for(int i = 0; i < others.size(); i++){
+            NonLinCircuitElement e = others.get(i);
+            e.getNonLinContribution(f, x);
+            if(J != null)
+                e.getHessianContribution(J, x);
+        }
+    }
+
+    /**
+     * @return number of devices fully evaluated by the last evaluation.
+     */
+    int getEvaluatedCount(){
+        return diodes.getEvaluatedCount() + others.size();
+    }
+
+    /**
+     * @return number of devices bypassed by the last evaluation.
+     */
+    int getBypassedCount(){
+        return diodes.getBypassedCount();
+    }
+
+    /**
+     * @return the Jacobian matrix positions touched by the elements, {row, column}.
+     */
+    List<int[]> getPositions(){
+        return positions;
+    }
+
+    /**
+     * Reset the entries of J the elements stamp into to their value in G.
+     * @param J a copy of G, or a Jacobian obtained from G by an earlier evaluation.
+     */
+    void resetJacobian(IRealMatrix J, IRealMatrix G){
+        for(int i = 0; i < positions.size(); i++){
+            int[] position = positions.get(i);
+            J.setValue(position[0], position[1], G.getValue(position[0], position[1]));
+        }
+    }
+
+    /**
+     * Give every element the chance to limit the step to the new iterate: the step
+     * is shortened to the smallest fraction accepted by the elements.
+     * @param xNew the new iterate, modified in place.
+     * @param xOld the previous iterate.
+     * @return true if the new iterate was limited.
+     */
+    boolean limitUpdate(IRealVector xNew, IRealVector xOld){
+        double fraction = limitFraction(xNew, xOld);
+
+        if(fraction == 1)
+            return false;
+
+        for(int i = 0; i < xNew.getDimension(); i++){
+            double old = xOld.getValue(i);
+            xNew.setValue(i, old + fraction*(xNew.getValue(i) - old));
+        }
+        return true;
+    }
+
+    /**
+     * @return the smallest fraction of the step from xOld to xNew accepted by the elements.
+     */
+    double limitFraction(IRealVector xNew, IRealVector xOld){
+        double fraction = 1;
+        for(int i = 0; i < elements.size(); i++){
+            fraction = Math.min(fraction, elements.get(i).limitStep(xNew, xOld));
+        }
+        return fraction;
+    }
+}
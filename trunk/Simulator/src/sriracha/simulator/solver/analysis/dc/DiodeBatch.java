@@ -0,0 +1,227 @@
+package sriracha.simulator.solver.analysis.dc;
+
+import sriracha.math.interfaces.IRealMatrix;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.Simulator;
+import sriracha.simulator.model.elements.Diode;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Structure-of-arrays form of a group of diodes, evaluated in one loop.
+ * The junction voltages are gathered from the node voltage vector, the currents
+ * and conductances computed together with a single exponential per diode, and
+ * the results scattered into f and the Jacobian.
+ *
+ * A diode whose junction voltage moved by less than the bypass tolerance since
+ * its last full evaluation is not re-evaluated: its current is extrapolated from the
+ * stored current and conductance, I = Ilast + glast*(V - Vlast) (SPICE device bypass).
+ *
+ * Large batches are split in chunks evaluated on the fork-join pool.  Each chunk only
+ * writes its own slots of the result arrays, and the results are added into f and the
+ * Jacobian afterwards on the calling thread in diode order, so the sums do not depend
+ * on the number of threads or on scheduling.
+ *
+ * The arrays of results are working storage: a batch must not be shared by
+ * concurrent Newton iterations.
+ */
+class DiodeBatch {
+
+    /**
+     * Number of diodes below which a chunk is evaluated without being split further.
+     */
+    public static final int STD_PARALLEL_CHUNK = 1024;
+
+    private int size;
+
+    //Node indices, -1 for ground
+    private int[] anode;
+    private int[] cathode;
+
+    //Model parameters
+    private double[] is;
+    private double[] vt;
+
+    //Working storage of the last evaluation
+    private double[] voltage;
+    private double[] current;
+    private double[] conductance;
+
+    //Junction voltage, current and conductance at the last full evaluation
+    private double[] evalVoltage;
+    private double[] evalCurrent;
+    private double[] evalConductance;
+
+    /**
+     * Largest junction voltage change allowing bypass, negative to disable bypass.
+     */
+    private double bypassTolerance;
+
+    //Counts of the last evaluation
+    private int evaluatedCount;
+    private int bypassedCount;
+
+    /**
+     * @param bypassTolerance largest junction voltage change allowing bypass, negative to disable.
+     */
+    DiodeBatch(List<Diode> diodes, double bypassTolerance){
+        this.bypassTolerance = bypassTolerance;
+        size = diodes.size();
+        anode = new int[size];
+        cathode = new int[size];
+        is = new double[size];
+        vt = new double[size];
+        voltage = new double[size];
+        current = new double[size];
+        conductance = new double[size];
+        evalVoltage = new double[size];
+        evalCurrent = new double[size];
+        evalConductance = new double[size];
+
+        for(int i = 0; i < size; i++){
+            Diode d = diodes.get(i);
+            anode[i] = d.getAnode();
+            cathode[i] = d.getCathode();
+            is[i] = d.getIs();
+            vt[i] = d.getVt();
+            //No evaluation yet, never bypassed
+            evalVoltage[i] = Double.NaN;
+        }
+    }
+
+    /**
+     * Evaluate all diodes at x and add their contributions.
+     * @param x node voltage vector.
+     * @param f vector in which the currents are added.
+     * @param J Jacobian matrix in which the conductances are added, null to skip.
+     */
+    void evaluate(IRealVector x, IRealVector f, IRealMatrix J){
+        if(size > STD_PARALLEL_CHUNK)
+            bypassedCount = Simulator.Pool.invoke(new Chunk(x, 0, size));
+        else
+            bypassedCount = gatherAndCompute(x, 0, size);
+        evaluatedCount = size - bypassedCount;
+        scatter(f, J);
+    }
+
+    /**
+     * Evaluate the diodes of the range [from, to).
+     * @return the number of bypassed diodes.
+     */
+    private int gatherAndCompute(IRealVector x, int from, int to){
+        gather(x, from, to);
+        return compute(from, to);
+    }
+
+    /**
+     * Read the junction voltages of the range [from, to) from the node voltage vector.
+     */
+    private void gather(IRealVector x, int from, int to){
+        for(int i = from; i < to; i++){
+            double vA = anode[i] == -1 ? 0 : x.getValue(anode[i]);
+            double vB = cathode[i] == -1 ? 0 : x.getValue(cathode[i]);
+            voltage[i] = vA - vB;
+        }
+    }
+
+    /**
+     * Diode equation on the range [from, to): I = Is*(exp(V/Vt)-1), g = Is/Vt*exp(V/Vt).
+     * @return the number of bypassed diodes.
+     */
+    private int compute(int from, int to){
+        int bypassed = 0;
+        for(int i = from; i < to; i++){
+            double dv = voltage[i] - evalVoltage[i];
+            if(Math.abs(dv) <= bypassTolerance){
+                current[i] = evalCurrent[i] + evalConductance[i] * dv;
+                conductance[i] = evalConductance[i];
+                bypassed++;
+            }else{
+                double e = Math.exp(voltage[i] / vt[i]);
+                current[i] = is[i] * (e - 1);
+                conductance[i] = is[i] / vt[i] * e;
+                evalVoltage[i] = voltage[i];
+                evalCurrent[i] = current[i];
+                evalConductance[i] = conductance[i];
+            }
+        }
+        return bypassed;
+    }
+
+    /**
+     * Add the computed currents and conductances into f and J.
+     */
+    private void scatter(IRealVector f, IRealMatrix J){
+        for(int i = 0; i < size; i++){
+            int a = anode[i];
+            int c = cathode[i];
+            if(a != -1)
+                f.addValue(a, current[i]);
+            if(c != -1)
+                f.addValue(c, -current[i]);
+
+            if(J != null){
+                double g = conductance[i];
+                if(a != -1)
+                    J.addValue(a, a, g);
+                if(c != -1)
+                    J.addValue(c, c, g);
+                if(a != -1 && c != -1){
+                    J.addValue(a, c, -g);
+                    J.addValue(c, a, -g);
+                }
+            }
+        }
+    }
+
+    /**
+     * Range of diodes split in halves until small enough to be evaluated directly.
+     * The result is the number of bypassed diodes of the range.
+     */
+    private class Chunk extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private IRealVector x;
+        private int from;
+        private int to;
+
+        Chunk(IRealVector x, int from, int to){
+            this.x = x;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute(){
+            if(to - from <= STD_PARALLEL_CHUNK)
+                return gatherAndCompute(x, from, to);
+
+            int middle = (from + to) >>> 1;
+            Chunk left = new Chunk(x, from, middle);
+            Chunk right = new Chunk(x, middle, to);
+            left.fork();
+            int bypassed = right.compute();
+            return bypassed + left.join();
+        }
+    }
+
+    int size(){
+        return size;
+    }
+
+    /**
+     * @return number of diodes fully evaluated by the last evaluation.
+     */
+    int getEvaluatedCount(){
+        return evaluatedCount;
+    }
+
+    /**
+     * @return number of diodes bypassed by the last evaluation.
+     */
+    int getBypassedCount(){
+        return bypassedCount;
+    }
+}
@@ -0,0 +1,514 @@
+package sriracha.simulator.solver.analysis.dc;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
+import sriracha.math.interfaces.IRealMatrix;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.Simulator;
+import sriracha.simulator.model.NonLinCircuitElement;
+import sriracha.simulator.model.SubCircuit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Two-level Newton iteration over the subcircuit instances of a non-linear DC system.
+ *
+ * The unknowns internal to each top-level SubCircuit instance form a block, all other
+ * unknowns form the top-level system.  At each top-level iteration every block solves
+ * its internal equations by its own Newton iteration, its port voltages being held at
+ * their present values, and returns a Norton equivalent seen from its ports:
+ * the currents it draws from the port nodes, and the conductance matrix
+ * Y = J_PP - J_PI*J_II^-1*J_IP.  The top-level Newton iteration only factors a system
+ * the size of the top-level unknowns, and the blocks are solved in parallel.
+ *
+ * After each top-level update the internal unknowns of the blocks are moved along
+ * their sensitivity to the ports, -J_II^-1*J_IP*deltaX_P, which gives the blocks a
+ * starting point consistent with the new port voltages.
+ *
+ * Nested subcircuits belong to the block of the top-level instance containing them.
+ */
+class HierarchicalNewton {
+
+    private MathActivator activator = MathActivator.Activator;
+
+    /**
+     * Equation being solved, for its convergence criteria and evaluation counts.  The
+     * partition is shared by the clones of the equation it was built from.
+     */
+    private DCNonLinEquation equation;
+
+    //Full system
+    private IRealMatrix G;
+    private int n;
+
+    //Indices in the full system of the top-level unknowns
+    private int[] top;
+
+    private IRealMatrix topG;
+    private DeviceEvaluator topDevices;
+
+    private ArrayList<Block> blocks;
+
+    private HierarchicalNewton(DCNonLinEquation equation){
+        this.equation = equation;
+        G = equation.G;
+        n = G.getNumberOfRows();
+    }
+
+    /**
+     * Partition the equation along its subcircuit instances.
+     * @param instances top-level subcircuit instances of the circuit.
+     * @return the partition, null if no instance has internal unknowns or if the
+     *      unknowns of two instances are coupled.
+     */
+    static HierarchicalNewton build(DCNonLinEquation equation, List<SubCircuit> instances){
+        HierarchicalNewton hierarchy = new HierarchicalNewton(equation);
+        int n = hierarchy.n;
+        IRealMatrix G = hierarchy.G;
+
+        //owner[i] is the block of unknown i, -1 for the top-level system
+        int[] owner = new int[n];
+        Arrays.fill(owner, -1);
+        ArrayList<int[]> internals = new ArrayList<int[]>();
+        for(SubCircuit instance : instances){
+            int[] internal = instance.getInternalIndices();
+            if(internal.length == 0)
+                continue;
+            for(int i : internal){
+                if(owner[i] != -1)
+                    return null;
+                owner[i] = internals.size();
+            }
+            internals.add(internal);
+        }
+        if(internals.isEmpty())
+            return null;
+
+        //map[i] is the index of top-level unknown i in the top-level system
+        int[] map = new int[n];
+        int topCount = 0;
+        for(int i = 0; i < n; i++){
+            map[i] = owner[i] == -1 ? topCount++ : -1;
+        }
+        hierarchy.top = new int[topCount];
+        for(int i = 0; i < n; i++){
+            if(owner[i] == -1)
+                hierarchy.top[map[i]] = i;
+        }
+
+        //Ports of each block: the top-level unknowns its internal unknowns are coupled to
+        ArrayList<TreeSet<Integer>> ports = new ArrayList<TreeSet<Integer>>();
+        for(int[] internal : internals){
+            TreeSet<Integer> blockPorts = new TreeSet<Integer>();
+            for(int i : internal){
+                for(int j = 0; j < n; j++){
+                    if(G.getValue(i, j) == 0 && G.getValue(j, i) == 0)
+                        continue;
+                    if(owner[j] == -1)
+                        blockPorts.add(j);
+                    else if(owner[j] != owner[i])
+                        return null;
+                }
+            }
+            ports.add(blockPorts);
+        }
+
+        //Non-linear elements touching internal unknowns belong to that block
+        ArrayList<NonLinCircuitElement> topElements = new ArrayList<NonLinCircuitElement>();
+        ArrayList<ArrayList<NonLinCircuitElement>> blockElements = new ArrayList<ArrayList<NonLinCircuitElement>>();
+        for(int k = 0; k < internals.size(); k++){
+            blockElements.add(new ArrayList<NonLinCircuitElement>());
+        }
+        for(NonLinCircuitElement e : equation.getNonLinearElem()){
+            int block = -1;
+            for(int[] position : e.getJacobianPositions()){
+                for(int i : position){
+                    if(owner[i] == -1)
+                        continue;
+                    if(block != -1 && block != owner[i])
+                        return null;
+                    block = owner[i];
+                }
+            }
+            if(block == -1){
+                topElements.add(e);
+            }else{
+                blockElements.get(block).add(e);
+                for(int[] position : e.getJacobianPositions()){
+                    for(int i : position){
+                        if(owner[i] == -1)
+                            ports.get(block).add(i);
+                    }
+                }
+            }
+        }
+
+        hierarchy.topG = hierarchy.activator.realMatrix(topCount, topCount);
+        for(int i = 0; i < topCount; i++){
+            for(int j = 0; j < topCount; j++){
+                hierarchy.topG.setValue(i, j, G.getValue(hierarchy.top[i], hierarchy.top[j]));
+            }
+        }
+        hierarchy.topDevices = equation.newDeviceEvaluator(mappedCopies(topElements, map));
+
+        hierarchy.blocks = new ArrayList<Block>(internals.size());
+        int[] local = new int[n];
+        for(int k = 0; k < internals.size(); k++){
+            int[] internal = internals.get(k);
+            int[] blockPorts = new int[ports.get(k).size()];
+            int p = 0;
+            for(int i : ports.get(k)){
+                blockPorts[p++] = i;
+            }
+            for(int i = 0; i < internal.length; i++){
+                local[internal[i]] = i;
+            }
+            for(int i = 0; i < blockPorts.length; i++){
+                local[blockPorts[i]] = internal.length + i;
+            }
+            hierarchy.blocks.add(hierarchy.new Block(internal, blockPorts, map,
+                mappedCopies(blockElements.get(k), local)));
+        }
+
+        return hierarchy;
+    }
+
+    private static ArrayList<NonLinCircuitElement> mappedCopies(List<NonLinCircuitElement> elements, int[] map){
+        ArrayList<NonLinCircuitElement> copies = new ArrayList<NonLinCircuitElement>(elements.size());
+        for(NonLinCircuitElement e : elements){
+            copies.add(e.buildMappedCopy(map));
+        }
+        return copies;
+    }
+
+    /**
+     * Run the two-level Newton iteration.  The blocks keep their state between
+     * iterations, so clones sharing the partition solve one at a time.
+     * @param equation equation being solved, the one the partition was built from or a clone of it.
+     * @param b source vector of the full system.
+     * @param xGuess initial guess of the full system.
+     * @param answer the vector in which the full solution is stored.
+     * @return -1 if the iteration failed, otherwise the number of top-level iterations needed to converge.
+     */
+    synchronized int solve(DCNonLinEquation equation, IRealVector b, IRealVector xGuess, IRealVector answer){
+        this.equation = equation;
+        ConvergenceCriteria criteria = equation.getConvergenceCriteria();
+        int topCount = top.length;
+
+        IRealVector topB = activator.realVector(topCount);
+        IRealVector xT = activator.realVector(topCount);
+        for(int i = 0; i < topCount; i++){
+            topB.setValue(i, b.getValue(top[i]));
+            xT.setValue(i, xGuess.getValue(top[i]));
+        }
+        for(Block block : blocks){
+            block.start(b, xGuess);
+        }
+
+        double[] scale = new double[topCount];
+        boolean updateConverged = false;
+        int iterations = 0;
+
+        while(true){
+            if(!solveBlocks())
+                return -1;
+
+            //Top-level residual and Jacobian, with the Norton equivalents of the blocks
+            IRealMatrix jacobian = topG.clone();
+            IRealVector phi = equation.residual(topG, topB, topDevices, xT, jacobian, scale);
+            for(Block block : blocks){
+                block.addNorton(phi, jacobian, scale);
+            }
+
+            if(updateConverged && equation.residualConverged(phi, scale))
+                break;
+
+            if(iterations == criteria.getMaxIterations() || Thread.currentThread().isInterrupted())
+                return -1;
+            iterations++;
+
+            IRealVector deltaT;
+            try{
+                deltaT = jacobian.luDecompose().solve(phi).times(-1);
+            }catch(ArithmeticException e){
+                return -1;
+            }
+            IRealVector xNew = (IRealVector)xT.plus(deltaT);
+
+            //Shorten the step to the smallest fraction accepted by the elements of all levels.
+            double fraction = topDevices.limitFraction(xNew, xT);
+            for(Block block : blocks){
+                fraction = Math.min(fraction, block.predict(deltaT));
+            }
+            if(fraction < 1){
+                xNew = (IRealVector)xT.plus(deltaT.times(fraction));
+            }
+            if(Double.isNaN(DCNonLinEquation.maxMag(xNew)))
+                return -1;
+            for(Block block : blocks){
+                block.move(fraction);
+            }
+
+            updateConverged = fraction == 1 && equation.updateConverged(xNew, xT);
+            xT = xNew;
+        }
+
+        for(int i = 0; i < topCount; i++){
+            answer.setValue(top[i], xT.getValue(i));
+        }
+        for(Block block : blocks){
+            block.store(answer);
+        }
+        return iterations;
+    }
+
+    /**
+     * Solve the internal equations of all blocks, in parallel if there are several.
+     * @return true if they all converged.
+     */
+    private boolean solveBlocks(){
+        if(blocks.size() == 1)
+            return blocks.get(0).call();
+
+        try{
+            for(Future<Boolean> result : Simulator.Pool.invokeAll(blocks)){
+                if(!result.get())
+                    return false;
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
+        }catch(ExecutionException e){
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Internal unknowns of one subcircuit instance, with the top-level unknowns they are
+     * coupled to (its ports).  The local system orders the internal unknowns first, then
+     * the ports.  Its port rows hold only the contributions of the block, their residual
+     * being the current the block draws from the port nodes.
+     */
+    private class Block implements Callable<Boolean> {
+
+        private int internalCount;
+        private int portCount;
+
+        //Indices of the internal unknowns and ports in the full system
+        private int[] internal;
+        private int[] ports;
+        //Indices of the ports in the top-level system
+        private int[] portTop;
+
+        private IRealMatrix localG;
+        private IRealVector localB;
+        private DeviceEvaluator devices;
+
+        //Present local vector, and the one predicted by the last top-level step
+        private IRealVector x;
+        private IRealVector predicted;
+
+        //Norton equivalent at the last solution
+        private double[] current;
+        private double[] currentScale;
+        private double[][] conductance;
+        //J_II^-1*J_IP at the last solution
+        private double[][] sensitivity;
+
+        Block(int[] internal, int[] ports, int[] topMap, ArrayList<NonLinCircuitElement> elements){
+            this.internal = internal;
+            this.ports = ports;
+            internalCount = internal.length;
+            portCount = ports.length;
+            portTop = new int[portCount];
+            for(int p = 0; p < portCount; p++){
+                portTop[p] = topMap[ports[p]];
+            }
+
+            int size = internalCount + portCount;
+            localG = activator.realMatrix(size, size);
+            for(int i = 0; i < internalCount; i++){
+                for(int j = 0; j < internalCount; j++){
+                    localG.setValue(i, j, G.getValue(internal[i], internal[j]));
+                }
+                for(int p = 0; p < portCount; p++){
+                    localG.setValue(i, internalCount + p, G.getValue(internal[i], ports[p]));
+                    localG.setValue(internalCount + p, i, G.getValue(ports[p], internal[i]));
+                }
+            }
+            devices = equation.newDeviceEvaluator(elements);
+
+            current = new double[portCount];
+            currentScale = new double[portCount];
+            conductance = new double[portCount][portCount];
+            sensitivity = new double[internalCount][portCount];
+        }
+
+        /**
+         * Take the internal sources and the starting point from the full system.
+         */
+        void start(IRealVector b, IRealVector xGuess){
+            localB = activator.realVector(internalCount + portCount);
+            x = activator.realVector(internalCount + portCount);
+            for(int i = 0; i < internalCount; i++){
+                localB.setValue(i, b.getValue(internal[i]));
+                x.setValue(i, xGuess.getValue(internal[i]));
+            }
+            for(int p = 0; p < portCount; p++){
+                x.setValue(internalCount + p, xGuess.getValue(ports[p]));
+            }
+        }
+
+        /**
+         * Newton iteration on the internal unknowns, the ports held fixed, followed by
+         * the computation of the Norton equivalent at the solution.
+         * @return true if the iteration converged.
+         */
+        @Override
+        public Boolean call(){
+            ConvergenceCriteria criteria = equation.getConvergenceCriteria();
+            int size = internalCount + portCount;
+            IRealMatrix jacobian = localG.clone();
+            double[] scale = new double[size];
+            boolean updateConverged = false;
+
+            for(int iterations = 0; ; iterations++){
+                IRealVector phi = equation.residual(localG, localB, devices, x, jacobian, scale);
+
+                boolean residualConverged = true;
+                for(int i = 0; i < internalCount && residualConverged; i++){
+                    residualConverged = criteria.residualConverged(phi.getValue(i), scale[i]);
+                }
+                if(updateConverged && residualConverged)
+                    return norton(phi, jacobian, scale);
+
+                if(iterations == criteria.getMaxIterations() || Thread.currentThread().isInterrupted())
+                    return false;
+
+                IRealVector rhs = activator.realVector(internalCount);
+                for(int i = 0; i < internalCount; i++){
+                    rhs.setValue(i, -phi.getValue(i));
+                }
+                IRealVector delta;
+                try{
+                    delta = internalBlock(jacobian).luDecompose().solve(rhs);
+                }catch(ArithmeticException e){
+                    return false;
+                }
+
+                IRealVector xNew = x.clone();
+                for(int i = 0; i < internalCount; i++){
+                    xNew.addValue(i, delta.getValue(i));
+                }
+                boolean limited = devices.limitUpdate(xNew, x);
+                if(Double.isNaN(DCNonLinEquation.maxMag(xNew)))
+                    return false;
+
+                updateConverged = !limited && equation.updateConverged(xNew, x);
+                x = xNew;
+            }
+        }
+
+        private IRealMatrix internalBlock(IRealMatrix jacobian){
+            IRealMatrix Jii = activator.realMatrix(internalCount, internalCount);
+            for(int i = 0; i < internalCount; i++){
+                for(int j = 0; j < internalCount; j++){
+                    Jii.setValue(i, j, jacobian.getValue(i, j));
+                }
+            }
+            return Jii;
+        }
+
+        /**
+         * Compute the port currents, J_II^-1*J_IP and Y = J_PP - J_PI*J_II^-1*J_IP.
+         * @return false if J_II is singular.
+         */
+        private boolean norton(IRealVector phi, IRealMatrix jacobian, double[] scale){
+            IRealLUDecomposition factors;
+            try{
+                factors = internalBlock(jacobian).luDecompose();
+            }catch(ArithmeticException e){
+                return false;
+            }
+
+            IRealVector column = activator.realVector(internalCount);
+            for(int q = 0; q < portCount; q++){
+                for(int i = 0; i < internalCount; i++){
+                    column.setValue(i, jacobian.getValue(i, internalCount + q));
+                }
+                IRealVector w = factors.solve(column);
+                for(int i = 0; i < internalCount; i++){
+                    sensitivity[i][q] = w.getValue(i);
+                }
+            }
+
+            for(int p = 0; p < portCount; p++){
+                current[p] = phi.getValue(internalCount + p);
+                currentScale[p] = scale[internalCount + p];
+                for(int q = 0; q < portCount; q++){
+                    double sum = jacobian.getValue(internalCount + p, internalCount + q);
+                    for(int i = 0; i < internalCount; i++){
+                        sum -= jacobian.getValue(internalCount + p, i) * sensitivity[i][q];
+                    }
+                    conductance[p][q] = sum;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Add the Norton equivalent into the top-level residual, scale and Jacobian.
+         */
+        void addNorton(IRealVector phi, IRealMatrix jacobian, double[] scale){
+            for(int p = 0; p < portCount; p++){
+                phi.addValue(portTop[p], current[p]);
+                scale[portTop[p]] += currentScale[p];
+                for(int q = 0; q < portCount; q++){
+                    jacobian.addValue(portTop[p], portTop[q], conductance[p][q]);
+                }
+            }
+        }
+
+        /**
+         * Predict the local vector after the top-level step deltaT.
+         * @return the fraction of the predicted step the elements of the block accept.
+         */
+        double predict(IRealVector deltaT){
+            predicted = x.clone();
+            for(int p = 0; p < portCount; p++){
+                double deltaP = deltaT.getValue(portTop[p]);
+                predicted.addValue(internalCount + p, deltaP);
+                for(int i = 0; i < internalCount; i++){
+                    predicted.addValue(i, -sensitivity[i][p] * deltaP);
+                }
+            }
+            return devices.limitFraction(predicted, x);
+        }
+
+        /**
+         * Move the local vector by the given fraction of the predicted step.
+         */
+        void move(double fraction){
+            for(int i = 0; i < x.getDimension(); i++){
+                double old = x.getValue(i);
+                x.setValue(i, old + fraction*(predicted.getValue(i) - old));
+            }
+        }
+
+        /**
+         * Store the internal unknowns into the full solution vector.
+         */
+        void store(IRealVector answer){
+            for(int i = 0; i < internalCount; i++){
+                answer.setValue(internal[i], x.getValue(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package sriracha.simulator.solver.analysis.dc;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealMatrix;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.model.NonLinCircuitElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Jacobian-free Newton-Krylov solver of the non-linear DC system
+ * phi(x) = Gx + f(x) - b = 0.
+ *
+ * Each Newton correction solves J*deltaX = -phi(x) with restarted GMRES instead of
+ * factoring the Jacobian.  The Jacobian is kept as a sparse matrix on the non-zero
+ * pattern of G and the positions the non-linear elements stamp into, so that each
+ * Jacobian-vector product costs one multiplication per non-zero.  GMRES is
+ * right-preconditioned by an incomplete LU factorization of the Jacobian on that same
+ * pattern (ILU(0), no fill-in), refreshed at every Newton iteration for the same cost.
+ *
+ * Newton steps are limited by the elements and backtracked along like in
+ * DCNonLinEquation.myNewtonRap, with the same convergence criteria.
+ */
+class JFNKSolver {
+
+    /**
+     * Number of GMRES iterations between restarts.
+     */
+    public static final int STD_RESTART = 30;
+    /**
+     * Maximum number of GMRES iterations per Newton correction.
+     */
+    public static final int STD_MAX_KRYLOV_ITERATIONS = 300;
+    /**
+     * GMRES stops when the linear residual is reduced by this factor (inexact Newton
+     * forcing term).
+     */
+    public static final double STD_FORCING_TERM = 1e-6;
+    /**
+     * Conductance added on the diagonal of the Jacobian to form the preconditioner, for
+     * nodes only connected through non-linear elements; also replaces zero pivots.
+     */
+    public static final double STD_PRECONDITIONER_GMIN = 1e-12;
+
+    private MathActivator activator = MathActivator.Activator;
+
+    private DCNonLinEquation equation;
+
+    private IRealMatrix G;
+    private IRealVector b;
+    private DeviceEvaluator devices;
+    private int n;
+
+    //Sparse pattern of the Jacobian, by rows: the columns of row i are
+    //columns[rowStart[i]] to columns[rowStart[i + 1] - 1], in increasing order.
+    private int[] rowStart;
+    private int[] columns;
+    //Position of the diagonal entry of each row
+    private int[] diagonal;
+
+    /**
+     * Jacobian entries at the present Newton iterate.
+     */
+    private double[] values;
+
+    /**
+     * ILU(0) factors of the Jacobian: L below the diagonal (unit diagonal implied), U on
+     * and above it.
+     */
+    private double[] factors;
+
+    /**
+     * @param equation equation providing the convergence criteria and the residual.
+     * @param G linear part of the system.
+     * @param b source vector.
+     * @param nonLinearElem non-linear elements.
+     */
+    JFNKSolver(DCNonLinEquation equation, IRealMatrix G, IRealVector b,
+        ArrayList<NonLinCircuitElement> nonLinearElem){
+        this.equation = equation;
+        this.G = G;
+        this.b = b;
+        n = b.getDimension();
+        devices = equation.newDeviceEvaluator(nonLinearElem);
+        buildPattern();
+    }
+
+    /**
+     * Collect the non-zero pattern of G, the diagonal and the element positions.
+     */
+    private void buildPattern(){
+        ArrayList<TreeSet<Integer>> rows = new ArrayList<TreeSet<Integer>>(n);
+        for(int i = 0; i < n; i++){
+            TreeSet<Integer> row = new TreeSet<Integer>();
+            row.add(i);
+            for(int j = 0; j < n; j++){
+                if(G.getValue(i, j) != 0)
+                    row.add(j);
+            }
+            rows.add(row);
+        }
+        for(int[] position : devices.getPositions()){
+            if(position[0] != -1 && position[1] != -1)
+                rows.get(position[0]).add(position[1]);
+        }
+
+        rowStart = new int[n + 1];
+        for(int i = 0; i < n; i++){
+            rowStart[i + 1] = rowStart[i] + rows.get(i).size();
+        }
+        columns = new int[rowStart[n]];
+        diagonal = new int[n];
+        for(int i = 0; i < n; i++){
+            int k = rowStart[i];
+            for(int j : rows.get(i)){
+                if(j == i)
+                    diagonal[i] = k;
+                columns[k++] = j;
+            }
+        }
+        values = new double[columns.length];
+        factors = new double[columns.length];
+    }
+
+    /**
+     * Run the Newton iteration.
+     * @param xGuess initial guess of node voltages.
+     * @param answer the vector in which the final result is stored.
+     * @return -1 if the iteration failed, otherwise the number of iterations needed to converge.
+     */
+    int solve(IRealVector xGuess, IRealVector answer){
+        ConvergenceCriteria criteria = equation.getConvergenceCriteria();
+
+        IRealVector x = xGuess.clone();
+        double[] scale = new double[n];
+        boolean updateConverged = false;
+        int iterations = 0;
+        //Only the entries the elements touch are restamped at each iteration.
+        IRealMatrix jacobian = G.clone();
+
+        while(true){
+            if(Thread.currentThread().isInterrupted())
+                return -1;
+
+            IRealVector phi = equation.residual(G, b, devices, x, jacobian, scale);
+
+            if(updateConverged && equation.residualConverged(phi, scale))
+                break;
+
+            if(iterations == criteria.getMaxIterations())
+                return -1;
+            iterations++;
+
+            double[] minusPhi = new double[n];
+            for(int i = 0; i < n; i++){
+                minusPhi[i] = -phi.getValue(i);
+            }
+            gather(jacobian);
+            factor();
+            double[] step = gmres(minusPhi);
+            if(step == null)
+                return -1;
+
+            IRealVector deltaX = toVector(step);
+            IRealVector xPrev = x;
+            x = (IRealVector)xPrev.plus(deltaX);
+            boolean limited = devices.limitUpdate(x, xPrev);
+
+            if(Double.isNaN(DCNonLinEquation.maxMag(x)))
+                return -1;
+
+            //Armijo backtracking on ||phi||.
+            double lambda = 1;
+            if(equation.isLineSearch() && !limited){
+                double phiNorm = DCNonLinEquation.norm(phi);
+                double trialNorm = DCNonLinEquation.norm(equation.residual(G, b, devices, x, null, null));
+                while(trialNorm > Math.sqrt(1 - 2*DCNonLinEquation.STD_ARMIJO_SLOPE*lambda)*phiNorm
+                    && lambda/2 >= DCNonLinEquation.STD_MIN_LINE_STEP){
+                    lambda /= 2;
+                    x = (IRealVector)xPrev.plus(deltaX.times(lambda));
+                    trialNorm = DCNonLinEquation.norm(equation.residual(G, b, devices, x, null, null));
+                }
+            }
+
+            updateConverged = !limited && lambda == 1 && equation.updateConverged(x, xPrev);
+        }
+
+        answer.copy(x);
+        return iterations;
+    }
+
+    /**
+     * Copy the entries of the pattern from the Jacobian.
+     */
+    private void gather(IRealMatrix jacobian){
+        for(int i = 0; i < n; i++){
+            for(int k = rowStart[i]; k < rowStart[i + 1]; k++){
+                values[k] = jacobian.getValue(i, columns[k]);
+            }
+        }
+    }
+
+    /**
+     * Incomplete LU factorization of J + gmin*I restricted to the pattern of J.
+     */
+    private void factor(){
+        System.arraycopy(values, 0, factors, 0, values.length);
+        for(int i = 0; i < n; i++){
+            factors[diagonal[i]] += STD_PRECONDITIONER_GMIN;
+        }
+
+        //position[j] is the index of entry (i, j) in the row being factored, -1 if none
+        int[] position = new int[n];
+        Arrays.fill(position, -1);
+        for(int i = 0; i < n; i++){
+            for(int k = rowStart[i]; k < rowStart[i + 1]; k++){
+                position[columns[k]] = k;
+            }
+            for(int k = rowStart[i]; k < diagonal[i]; k++){
+                int row = columns[k];
+                factors[k] /= factors[diagonal[row]];
+                for(int m = diagonal[row] + 1; m < rowStart[row + 1]; m++){
+                    if(position[columns[m]] != -1)
+                        factors[position[columns[m]]] -= factors[k] * factors[m];
+                }
+            }
+            if(factors[diagonal[i]] == 0)
+                factors[diagonal[i]] = STD_PRECONDITIONER_GMIN;
+            for(int k = rowStart[i]; k < rowStart[i + 1]; k++){
+                position[columns[k]] = -1;
+            }
+        }
+    }
+
+    /**
+     * Solve J*y = rhs by restarted GMRES, right-preconditioned by the ILU(0) factors.
+     * @return the solution, null if GMRES did not converge.
+     */
+    private double[] gmres(double[] rhs){
+        double rhsNorm = norm(rhs);
+        double[] y = new double[n];
+        if(rhsNorm == 0)
+            return y;
+
+        double target = STD_FORCING_TERM * rhsNorm;
+        int m = Math.min(STD_RESTART, n);
+        int total = 0;
+
+        while(total < STD_MAX_KRYLOV_ITERATIONS){
+            //r = rhs - J*y
+            double[] r = jacobianProduct(y);
+            for(int i = 0; i < n; i++){
+                r[i] = rhs[i] - r[i];
+            }
+            double beta = norm(r);
+            if(beta <= target)
+                return y;
+
+            //Arnoldi basis, Hessenberg matrix and Givens rotations
+            double[][] V = new double[m + 1][];
+            double[][] H = new double[m + 1][m];
+            double[] cs = new double[m];
+            double[] sn = new double[m];
+            double[] g = new double[m + 1];
+
+            V[0] = scaled(r, 1 / beta);
+            g[0] = beta;
+
+            int k = 0;
+            while(k < m && total < STD_MAX_KRYLOV_ITERATIONS){
+                double[] w = jacobianProduct(precondition(V[k]));
+
+                //Modified Gram-Schmidt
+                for(int j = 0; j <= k; j++){
+                    H[j][k] = dot(w, V[j]);
+                    for(int i = 0; i < n; i++){
+                        w[i] -= H[j][k] * V[j][i];
+                    }
+                }
+                double wNorm = norm(w);
+                H[k + 1][k] = wNorm;
+
+                //Apply the previous rotations to the new column, then eliminate H[k+1][k].
+                for(int j = 0; j < k; j++){
+                    double temp = cs[j]*H[j][k] + sn[j]*H[j + 1][k];
+                    H[j + 1][k] = -sn[j]*H[j][k] + cs[j]*H[j + 1][k];
+                    H[j][k] = temp;
+                }
+                double rho = Math.hypot(H[k][k], H[k + 1][k]);
+                if(rho == 0)
+                    return null;
+                cs[k] = H[k][k] / rho;
+                sn[k] = H[k + 1][k] / rho;
+                H[k][k] = rho;
+                H[k + 1][k] = 0;
+                g[k + 1] = -sn[k]*g[k];
+                g[k] = cs[k]*g[k];
+
+                k++;
+                total++;
+
+                //Converged, or the Krylov space is invariant (exact solution reached).
+                if(Math.abs(g[k]) <= target || wNorm == 0)
+                    break;
+                V[k] = scaled(w, 1 / wNorm);
+            }
+
+            //Solve the triangular system H(0:k, 0:k)*z = g(0:k), then y += M^-1 * V*z.
+            double[] z = new double[k];
+            for(int i = k - 1; i >= 0; i--){
+                double sum = g[i];
+                for(int j = i + 1; j < k; j++){
+                    sum -= H[i][j] * z[j];
+                }
+                z[i] = sum / H[i][i];
+            }
+            double[] update = new double[n];
+            for(int j = 0; j < k; j++){
+                for(int i = 0; i < n; i++){
+                    update[i] += z[j] * V[j][i];
+                }
+            }
+            double[] correction = precondition(update);
+            for(int i = 0; i < n; i++){
+                y[i] += correction[i];
+            }
+
+            if(Double.isNaN(norm(y)))
+                return null;
+        }
+
+        //Accept the last iterate if it at least reduced the linear residual.
+        double[] r = jacobianProduct(y);
+        for(int i = 0; i < n; i++){
+            r[i] = rhs[i] - r[i];
+        }
+        return norm(r) < rhsNorm ? y : null;
+    }
+
+    /**
+     * @return J*v, J being the Jacobian at the present Newton iterate.
+     */
+    private double[] jacobianProduct(double[] v){
+        double[] out = new double[n];
+        for(int i = 0; i < n; i++){
+            double sum = 0;
+            for(int k = rowStart[i]; k < rowStart[i + 1]; k++){
+                sum += values[k] * v[columns[k]];
+            }
+            out[i] = sum;
+        }
+        return out;
+    }
+
+    /**
+     * @return M^-1 * v, M = L*U being the ILU(0) factors.
+     */
+    private double[] precondition(double[] v){
+        double[] out = v.clone();
+        for(int i = 0; i < n; i++){
+            for(int k = rowStart[i]; k < diagonal[i]; k++){
+                out[i] -= factors[k] * out[columns[k]];
+            }
+        }
+        for(int i = n - 1; i >= 0; i--){
+            for(int k = diagonal[i] + 1; k < rowStart[i + 1]; k++){
+                out[i] -= factors[k] * out[columns[k]];
+            }
+            out[i] /= factors[diagonal[i]];
+        }
+        return out;
+    }
+
+    private IRealVector toVector(double[] v){
+        IRealVector vector = activator.realVector(n);
+        for(int i = 0; i < n; i++){
+            vector.setValue(i, v[i]);
+        }
+        return vector;
+    }
+
+    private static double dot(double[] u, double[] v){
+        double sum = 0;
+        for(int i = 0; i < u.length; i++){
+            sum += u[i]*v[i];
+        }
+        return sum;
+    }
+
+    private static double norm(double[] v){
+        return Math.sqrt(dot(v, v));
+    }
+
+    private static double[] scaled(double[] v, double factor){
+        double[] out = new double[v.length];
+        for(int i = 0; i < v.length; i++){
+            out[i] = v[i]*factor;
+        }
+        return out;
+    }
+}
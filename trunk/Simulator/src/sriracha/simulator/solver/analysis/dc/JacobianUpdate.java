@@ -0,0 +1,25 @@
+package sriracha.simulator.solver.analysis.dc;
+
+/**
+ * Policy deciding when the Newton-Raphson iteration of DCNonLinEquation
+ * rebuilds and refactors its Jacobian matrix.
+ */
+public enum JacobianUpdate {
+
+    /**
+     * Plain Newton: the Jacobian is rebuilt and refactored at every iteration.
+     */
+    Full,
+
+    /**
+     * Chord method: the factored Jacobian is reused for as long as the iteration
+     * keeps contracting fast enough, and only refactored when it slows down.
+     */
+    Chord,
+
+    /**
+     * Shamanskii method: the factored Jacobian is reused for a fixed number of
+     * iterations, or refactored earlier if the iteration slows down.
+     */
+    Shamanskii
+}
@@ -0,0 +1,27 @@
+package sriracha.simulator.solver.analysis.dc;
+
+/**
+ * How the non-linear DC system is solved by DCNonLinEquation, as set by the
+ * NEWTON key of the .OPTIONS line.
+ */
+public enum NewtonMode {
+
+    /**
+     * Newton-Raphson, each correction solved by LU factors of the Jacobian.
+     */
+    Direct,
+
+    /**
+     * Jacobian-free Newton-Krylov: each correction is solved by GMRES from
+     * Jacobian-vector products, preconditioned by an incomplete factorization
+     * (see JFNKSolver).
+     */
+    JacobianFree,
+
+    /**
+     * Two-level Newton: the subcircuit instances are solved by their own Newton
+     * iterations under a top-level one (see HierarchicalNewton).  Falls back to
+     * Direct if the circuit cannot be partitioned or the iteration fails.
+     */
+    Hierarchical
+}
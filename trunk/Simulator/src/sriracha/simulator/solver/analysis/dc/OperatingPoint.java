@@ -0,0 +1,115 @@
+package sriracha.simulator.solver.analysis.dc;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealMatrix;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.model.Circuit;
+import sriracha.simulator.model.NonLinCircuitElement;
+import sriracha.simulator.solver.analysis.ac.ACEquation;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * DC operating point of a non-linear circuit, together with the small-signal
+ * conductances of its non-linear elements at that point (the entries of df/dx).
+ *
+ * Small-signal analyses only need the operating point of the circuit, not of any
+ * sweep: it is solved once per circuit object and cached, so that every AC and
+ * sensitivity analysis of the circuit reuses it.  The first request sets the
+ * convergence criteria used.
+ */
+public class OperatingPoint {
+
+    private static final Map<Circuit, OperatingPoint> cache = new WeakHashMap<Circuit, OperatingPoint>();
+
+    private IRealVector solution;
+
+    //Non-zero entries of df/dx at the solution
+    private int[] rows;
+    private int[] columns;
+    private double[] conductances;
+
+    private OperatingPoint(){
+    }
+
+    /**
+     * @param circuit a non-linear circuit, already set up with all its extra variables.
+     * @param criteria convergence criteria of the non-linear solver.
+     * @return the operating point of the circuit, solved on the first call only.
+     */
+    public static OperatingPoint of(Circuit circuit, ConvergenceCriteria criteria){
+        synchronized(cache){
+            OperatingPoint point = cache.get(circuit);
+            if(point == null){
+                point = solve(circuit, criteria);
+                cache.put(circuit, point);
+            }
+            return point;
+        }
+    }
+
+    private static OperatingPoint solve(Circuit circuit, ConvergenceCriteria criteria){
+        DCNonLinEquation equation = (DCNonLinEquation)DCNonLinEquation.generate(circuit);
+        equation.setConvergenceCriteria(criteria);
+
+        OperatingPoint point = new OperatingPoint();
+        point.solution = equation.solve();
+
+        int n = point.solution.getDimension();
+        IRealMatrix J = MathActivator.Activator.realMatrix(n, n);
+        for(NonLinCircuitElement e : equation.getNonLinearElem()){
+            e.getHessianContribution(J, point.solution);
+        }
+
+        int count = 0;
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                if(J.getValue(i, j) != 0)
+                    count++;
+            }
+        }
+        point.rows = new int[count];
+        point.columns = new int[count];
+        point.conductances = new double[count];
+        int k = 0;
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                if(J.getValue(i, j) != 0){
+                    point.rows[k] = i;
+                    point.columns[k] = j;
+                    point.conductances[k++] = J.getValue(i, j);
+                }
+            }
+        }
+        return point;
+    }
+
+    /**
+     * @return the DC solution vector.
+     */
+    public IRealVector getSolution(){
+        return solution.clone();
+    }
+
+    /**
+     * Stamp the small-signal conductances of the non-linear elements into the matrix
+     * of a linear DC equation, which then holds the Jacobian at the operating point.
+     * @param equation DCEquation object to be stamped
+     */
+    public void applyDC(DCEquation equation){
+        for(int k = 0; k < conductances.length; k++){
+            equation.applyMatrixStamp(rows[k], columns[k], conductances[k]);
+        }
+    }
+
+    /**
+     * Stamp the small-signal conductances of the non-linear elements.
+     * @param equation ACEquation object to be stamped
+     */
+    public void applyAC(ACEquation equation){
+        for(int k = 0; k < conductances.length; k++){
+            equation.applyRealMatrixStamp(rows[k], columns[k], conductances[k]);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package sriracha.simulator.solver.analysis.dc;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
+import sriracha.math.interfaces.IRealMatrix;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.model.NonLinCircuitElement;
+
+import java.util.ArrayList;
+
+/**
+ * Condensation of the linear part of a non-linear DC system onto the unknowns
+ * touched by the non-linear elements.
+ *
+ * The unknowns are split in the set N of those touched by a non-linear element and
+ * the set L of all others:
+ * [G_LL G_LN] [x_L]   [  0   ]   [b_L]
+ * [G_NL G_NN] [x_N] + [f(x_N)] = [b_N]
+ * G_LL is factored once, and Newton only iterates on the Schur complement system
+ * S*x_N + f(x_N) = b_N - G_NL*G_LL^-1*b_L, with S = G_NN - G_NL*G_LL^-1*G_LN.
+ * The linear unknowns are then recovered by x_L = G_LL^-1*(b_L - G_LN*x_N).
+ *
+ * Unknowns with a zero diagonal in G (voltage source branch currents) are kept in N,
+ * as they would otherwise leave G_LL singular whenever a source is connected across
+ * a non-linear element.
+ *
+ * A condensation only depends on G and on the elements: it can be reused for any
+ * source vector, and shared between threads.
+ */
+class SchurComplement {
+
+    private MathActivator activator = MathActivator.Activator;
+
+    //Indices in the full system of the kept (non-linear) and condensed (linear) unknowns
+    private int[] kept;
+    private int[] condensed;
+
+    private IRealLUDecomposition linearFactors;
+
+    //Coupling blocks G_LN and G_NL
+    private double[][] linearToKept;
+    private double[][] keptToLinear;
+
+    private IRealMatrix complement;
+
+    private ArrayList<NonLinCircuitElement> elements;
+
+    private SchurComplement(){
+    }
+
+    /**
+     * Condense G onto the unknowns of the non-linear elements.
+     * @return the condensation, null if there is nothing to condense or G_LL is singular.
+     */
+    static SchurComplement build(IRealMatrix G, ArrayList<NonLinCircuitElement> nonLinearElem){
+        int n = G.getNumberOfRows();
+
+        boolean[] isKept = new boolean[n];
+        for(NonLinCircuitElement e : nonLinearElem){
+            for(int[] position : e.getJacobianPositions()){
+                isKept[position[0]] = true;
+                isKept[position[1]] = true;
+            }
+        }
+        for(int i = 0; i < n; i++){
+            if(G.getValue(i, i) == 0)
+                isKept[i] = true;
+        }
+
+        //map[i] is the index of unknown i within its own set
+        int[] map = new int[n];
+        int keptCount = 0;
+        for(int i = 0; i < n; i++){
+            map[i] = isKept[i] ? keptCount++ : i - keptCount;
+        }
+        int linearCount = n - keptCount;
+        if(keptCount == 0 || linearCount == 0)
+            return null;
+
+        SchurComplement schur = new SchurComplement();
+        schur.kept = new int[keptCount];
+        schur.condensed = new int[linearCount];
+        for(int i = 0; i < n; i++){
+            if(isKept[i])
+                schur.kept[map[i]] = i;
+            else
+                schur.condensed[map[i]] = i;
+        }
+
+        IRealMatrix linearBlock = schur.activator.realMatrix(linearCount, linearCount);
+        schur.linearToKept = new double[linearCount][keptCount];
+        schur.keptToLinear = new double[keptCount][linearCount];
+        for(int i = 0; i < linearCount; i++){
+            for(int j = 0; j < linearCount; j++){
+                linearBlock.setValue(i, j, G.getValue(schur.condensed[i], schur.condensed[j]));
+            }
+            for(int j = 0; j < keptCount; j++){
+                schur.linearToKept[i][j] = G.getValue(schur.condensed[i], schur.kept[j]);
+                schur.keptToLinear[j][i] = G.getValue(schur.kept[j], schur.condensed[i]);
+            }
+        }
+
+        try{
+            schur.linearFactors = linearBlock.luDecompose();
+        }catch(ArithmeticException e){
+            return null;
+        }
+
+        //S = G_NN - G_NL*G_LL^-1*G_LN, one column at a time
+        schur.complement = schur.activator.realMatrix(keptCount, keptCount);
+        IRealVector column = schur.activator.realVector(linearCount);
+        for(int j = 0; j < keptCount; j++){
+            for(int i = 0; i < linearCount; i++){
+                column.setValue(i, schur.linearToKept[i][j]);
+            }
+            IRealVector w = schur.linearFactors.solve(column);
+            for(int i = 0; i < keptCount; i++){
+                double value = G.getValue(schur.kept[i], schur.kept[j]) - schur.keptProduct(i, w);
+                if(Double.isNaN(value) || Double.isInfinite(value))
+                    return null;
+                schur.complement.setValue(i, j, value);
+            }
+        }
+
+        schur.elements = new ArrayList<NonLinCircuitElement>(nonLinearElem.size());
+        for(NonLinCircuitElement e : nonLinearElem){
+            schur.elements.add(e.buildMappedCopy(map));
+        }
+
+        return schur;
+    }
+
+    /**
+     * @return row i of G_NL times the linear unknown vector v.
+     */
+    private double keptProduct(int i, IRealVector v){
+        double sum = 0;
+        double[] row = keptToLinear[i];
+        for(int j = 0; j < row.length; j++){
+            sum += row[j] * v.getValue(j);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the Schur complement S.
+     */
+    IRealMatrix getMatrix(){
+        return complement;
+    }
+
+    /**
+     * @return copies of the non-linear elements connected to the indices of the reduced system.
+     */
+    ArrayList<NonLinCircuitElement> getElements(){
+        return elements;
+    }
+
+    /**
+     * @param b source vector of the full system.
+     * @return source vector of the reduced system, b_N - G_NL*G_LL^-1*b_L.
+     */
+    IRealVector reduce(IRealVector b){
+        IRealVector bL = activator.realVector(condensed.length);
+        for(int i = 0; i < condensed.length; i++){
+            bL.setValue(i, b.getValue(condensed[i]));
+        }
+        IRealVector z = linearFactors.solve(bL);
+
+        IRealVector reduced = activator.realVector(kept.length);
+        for(int i = 0; i < kept.length; i++){
+            reduced.setValue(i, b.getValue(kept[i]) - keptProduct(i, z));
+        }
+        return reduced;
+    }
+
+    /**
+     * @param x vector of the full system.
+     * @return the entries of x at the kept unknowns.
+     */
+    IRealVector restrict(IRealVector x){
+        IRealVector reduced = activator.realVector(kept.length);
+        for(int i = 0; i < kept.length; i++){
+            reduced.setValue(i, x.getValue(kept[i]));
+        }
+        return reduced;
+    }
+
+    /**
+     * Recover the full solution by back-substitution.
+     * @param xN solution of the reduced system.
+     * @param b source vector of the full system.
+     * @return the full solution vector.
+     */
+    IRealVector expand(IRealVector xN, IRealVector b){
+        IRealVector rhs = activator.realVector(condensed.length);
+        for(int i = 0; i < condensed.length; i++){
+            double sum = b.getValue(condensed[i]);
+            double[] row = linearToKept[i];
+            for(int j = 0; j < kept.length; j++){
+                sum -= row[j] * xN.getValue(j);
+            }
+            rhs.setValue(i, sum);
+        }
+        IRealVector xL = linearFactors.solve(rhs);
+
+        IRealVector x = activator.realVector(kept.length + condensed.length);
+        for(int i = 0; i < kept.length; i++){
+            x.setValue(kept[i], xN.getValue(i));
+        }
+        for(int i = 0; i < condensed.length; i++){
+            x.setValue(condensed[i], xL.getValue(i));
+        }
+        return x;
+    }
+
+    /**
+     * @return number of unknowns of the reduced system.
+     */
+    int getReducedSize(){
+        return kept.length;
+    }
+}
@@ -0,0 +1,214 @@
+package sriracha.simulator.solver.analysis.net;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IComplex;
+import sriracha.math.interfaces.IComplexLUDecomposition;
+import sriracha.math.interfaces.IComplexMatrix;
+import sriracha.math.interfaces.IComplexVector;
+import sriracha.simulator.Options;
+import sriracha.simulator.Simulator;
+import sriracha.simulator.model.Circuit;
+import sriracha.simulator.solver.analysis.Analysis;
+import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.ac.ACAnalysis;
+import sriracha.simulator.solver.analysis.ac.ACEquation;
+import sriracha.simulator.solver.analysis.ac.ACResults;
+import sriracha.simulator.solver.analysis.ac.ACSubType;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
+
+/**
+ * Network parameter analysis: .NET Z|Y|S LIN|DEC|OCT points fStart fEnd port1 port2 ... [Z0=value]
+ *
+ * Computes the Z, Y or S parameter matrix of the circuit seen from its ports, over the
+ * frequencies of the equivalent AC sweep.  A port is a pair of nodes, the independent
+ * sources of the circuit are turned off (voltage sources shorted, current sources open)
+ * and non-linear elements are linearized at their operating point.
+ *
+ * Each frequency factors the AC matrix A once and solves A*X = P for the whole block of
+ * port excitations P, column k injecting a unit current into port k.  The impedance
+ * matrix is then Z = P'*X, and Y = inverse(Z), S = inverse(Z + Z0)*(Z - Z0) only involve
+ * matrices of the size of the number of ports.
+ *
+ * Each result vector holds the parameter matrix of a frequency, row by row.
+ */
+public class NetworkAnalysis extends Analysis
+{
+    /**
+     * Default reference impedance of S parameters, in ohms.
+     */
+    public static final double STD_REFERENCE_IMPEDANCE = 50;
+
+    private MathActivator activator = MathActivator.Activator;
+
+    private NetworkParameter parameter;
+
+    //Node indices of the ports, -1 for ground
+    private int[] portPlus;
+    private int[] portMinus;
+
+    private double referenceImpedance;
+
+    private ACSubType subType;
+    private double fStart;
+    private double fEnd;
+    private int points;
+
+    /**
+     * Convergence criteria of the DC operating point of non-linear circuits.
+     */
+    private ConvergenceCriteria criteria = new ConvergenceCriteria();
+
+    private ACEquation equation;
+
+    /**
+     * Port incidence matrix P, column k being +1 at the positive node of port k
+     * and -1 at its negative node.
+     */
+    private IComplexMatrix incidence;
+
+    /**
+     * @param parameter kind of parameter matrix computed.
+     * @param portPlus  positive node index of each port, -1 for ground.
+     * @param portMinus negative node index of each port, -1 for ground.
+     * @param subType   Type of scale, Linear, Decade or Octave, as for AC analysis
+     * @param fStart    start frequency
+     * @param fEnd      stop frequency
+     * @param points    for Linear total number of frequency points or number per decade/octave
+     */
+    public NetworkAnalysis(NetworkParameter parameter, int[] portPlus, int[] portMinus,
+                           ACSubType subType, double fStart, double fEnd, int points)
+    {
+        super(AnalysisType.NET);
+        this.parameter = parameter;
+        this.portPlus = portPlus;
+        this.portMinus = portMinus;
+        this.subType = subType;
+        this.fStart = fStart;
+        this.fEnd = fEnd;
+        this.points = points;
+        referenceImpedance = STD_REFERENCE_IMPEDANCE;
+    }
+
+    public NetworkParameter getParameter()
+    {
+        return parameter;
+    }
+
+    /**
+     * @return the number of ports.
+     */
+    public int getPortCount()
+    {
+        return portPlus.length;
+    }
+
+    /**
+     * @param referenceImpedance reference impedance of S parameters, in ohms.
+     */
+    public void setReferenceImpedance(double referenceImpedance)
+    {
+        this.referenceImpedance = referenceImpedance;
+    }
+
+    /**
+     * @param criteria convergence criteria of the DC operating point of non-linear circuits.
+     */
+    public void setConvergenceCriteria(ConvergenceCriteria criteria)
+    {
+        this.criteria = criteria;
+    }
+
+    @Override
+    public void extractSolvingInfo(Circuit circuit)
+    {
+        equation = ACEquation.generate(circuit, criteria);
+
+        incidence = activator.complexMatrix(circuit.getMatrixSize(), getPortCount());
+        for (int k = 0; k < getPortCount(); k++)
+        {
+            if (portPlus[k] != -1) incidence.addValue(portPlus[k], k, 1, 0);
+            if (portMinus[k] != -1) incidence.addValue(portMinus[k], k, -1, 0);
+        }
+    }
+
+    @Override
+    public ACResults run()
+    {
+        ACResults results = new ACResults();
+        for (double frequency : ACAnalysis.sweepFrequencies(subType, fStart, fEnd, points))
+        {
+            if (Simulator.Instance.isCancelRequested()) return null;
+
+            if (Options.isPrintProgress()) System.out.println("NET solving point");
+            results.addVector(frequency, flatten(parameters(frequency)));
+        }
+        return results;
+    }
+
+    /**
+     * @return the parameter matrix at the frequency.
+     */
+    private IComplexMatrix parameters(double frequency)
+    {
+        IComplexLUDecomposition factors = equation.decompose(frequency);
+        IComplexMatrix responses = factors.solve(incidence);
+
+        int ports = getPortCount();
+        IComplexMatrix impedance = activator.complexMatrix(ports, ports);
+        for (int j = 0; j < ports; j++)
+        {
+            for (int k = 0; k < ports; k++)
+            {
+                if (portPlus[j] != -1) impedance.addValue(j, k, responses.getValue(portPlus[j], k));
+                if (portMinus[j] != -1) impedance.addValue(j, k, responses.getValue(portMinus[j], k).opposite());
+            }
+        }
+
+        switch (parameter)
+        {
+            case Admittance:
+                return impedance.luDecompose().solve(identity(ports, 1));
+            case Scattering:
+                IComplexMatrix sum = (IComplexMatrix) impedance.plus(identity(ports, referenceImpedance));
+                IComplexMatrix difference = (IComplexMatrix) impedance.minus(identity(ports, referenceImpedance));
+                return sum.luDecompose().solve(difference);
+            default:
+                return impedance;
+        }
+    }
+
+    /**
+     * @return size by size matrix with value on its diagonal.
+     */
+    private IComplexMatrix identity(int size, double value)
+    {
+        IComplexMatrix identity = activator.complexMatrix(size, size);
+        for (int i = 0; i < size; i++)
+            identity.setValue(i, i, value, 0);
+        return identity;
+    }
+
+    /**
+     * @return the entries of the matrix, row by row.
+     */
+    private IComplexVector flatten(IComplexMatrix matrix)
+    {
+        int columns = matrix.getNumberOfColumns();
+        IComplexVector vector = activator.complexVector(matrix.getNumberOfRows() * columns);
+        for (int i = 0; i < matrix.getNumberOfRows(); i++)
+        {
+            for (int j = 0; j < columns; j++)
+            {
+                IComplex value = matrix.getValue(i, j);
+                vector.setValue(i * columns + j, value);
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public String toString()
+    {
+        return ".NET " + parameter + " " + subType + " " + points + " " + fStart + " " + fEnd + " ports: " + getPortCount();
+    }
+}
@@ -0,0 +1,20 @@
+package sriracha.simulator.solver.analysis.net;
+
+/**
+ * Kind of parameter matrix computed by a network analysis, set by .NET Z|Y|S.
+ */
+public enum NetworkParameter
+{
+    /**
+     * Impedance parameters, port voltages per unit of port current, other ports open.
+     */
+    Impedance,
+    /**
+     * Admittance parameters, port currents per unit of port voltage, other ports shorted.
+     */
+    Admittance,
+    /**
+     * Scattering parameters, with the same real reference impedance at every port.
+     */
+    Scattering
+}
@@ -0,0 +1,241 @@
+package sriracha.simulator.solver.analysis.noise;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IComplexVector;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.Options;
+import sriracha.simulator.Simulator;
+import sriracha.simulator.model.Circuit;
+import sriracha.simulator.model.CircuitElement;
+import sriracha.simulator.model.elements.sources.Source;
+import sriracha.simulator.solver.analysis.Analysis;
+import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.ac.ACAnalysis;
+import sriracha.simulator.solver.analysis.ac.ACEquation;
+import sriracha.simulator.solver.analysis.ac.ACSubType;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
+import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.dc.DCResults;
+import sriracha.simulator.solver.analysis.dc.OperatingPoint;
+import sriracha.simulator.solver.output.filtering.NodeInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Noise analysis: .NOISE OUTPUT INPUT LIN|DEC|OCT points fStart fEnd
+ *
+ * Computes, over the frequencies of the equivalent AC sweep, the noise at the output
+ * (a node voltage, a voltage difference or the current of a voltage source) due to the
+ * thermal noise of the resistors and the shot noise of the diodes at the operating point,
+ * as well as the same noise referred to the input source.
+ *
+ * Each frequency takes a single factorization of the AC matrix A and one adjoint solve
+ * A'*y = c, c selecting the output: y gives the transfer from every noise source to the
+ * output (see NoiseEquation), and y'*u the gain from the input, u being the change of
+ * the source vector per unit of the input.  Frequencies are independent and are solved
+ * in parallel.
+ */
+public class NoiseAnalysis extends Analysis
+{
+    private MathActivator activator = MathActivator.Activator;
+
+    private NodeInfo output;
+
+    private Source input;
+
+    private ACSubType subType;
+    private double fStart;
+    private double fEnd;
+    private int points;
+
+    /**
+     * Convergence criteria of the DC operating point of non-linear circuits.
+     */
+    private ConvergenceCriteria criteria = new ConvergenceCriteria();
+
+    private ACEquation equation;
+
+    private List<CircuitElement> elements;
+
+    /**
+     * Operating point of non-linear circuits, null for linear ones.
+     */
+    private IRealVector solution;
+
+    /**
+     * Output selector c, as the right-hand side of the adjoint system.
+     */
+    private IComplexVector selector;
+
+    /**
+     * Change of the source vector per unit of the input.
+     */
+    private double[] excitation;
+
+    private double[] frequencies;
+
+    //Output and input noise of each frequency, in units per square root of Hz
+    private double[] outputNoise;
+    private double[] inputNoise;
+
+    /**
+     * @param output  the output quantity.
+     * @param input   independent source of the main circuit the noise is referred to.
+     * @param subType Type of scale, Linear, Decade or Octave, as for AC analysis
+     * @param fStart  start frequency
+     * @param fEnd    stop frequency
+     * @param points  for Linear total number of frequency points or number per decade/octave
+     */
+    public NoiseAnalysis(NodeInfo output, Source input, ACSubType subType, double fStart, double fEnd, int points)
+    {
+        super(AnalysisType.NOISE);
+        this.output = output;
+        this.input = input;
+        this.subType = subType;
+        this.fStart = fStart;
+        this.fEnd = fEnd;
+        this.points = points;
+    }
+
+    public NodeInfo getOutput()
+    {
+        return output;
+    }
+
+    public Source getInput()
+    {
+        return input;
+    }
+
+    /**
+     * @param criteria convergence criteria of the DC operating point of non-linear circuits.
+     */
+    public void setConvergenceCriteria(ConvergenceCriteria criteria)
+    {
+        this.criteria = criteria;
+    }
+
+    @Override
+    public void extractSolvingInfo(Circuit circuit)
+    {
+        equation = ACEquation.generate(circuit, criteria);
+        elements = new ArrayList<CircuitElement>(circuit.getElements());
+        solution = circuit.isLinear() ? null : OperatingPoint.of(circuit, criteria).getSolution();
+
+        int n = circuit.getMatrixSize();
+
+        //c such that output = c'*x, output being linear in x
+        selector = activator.complexVector(n);
+        IRealVector probe = activator.realVector(n);
+        for (int i = 0; i < n; i++)
+        {
+            probe.setValue(i, 1);
+            selector.setValue(i, output.extractFrom(probe)[0], 0);
+            probe.setValue(i, 0);
+        }
+
+        DCEquation zero = new DCEquation(n);
+        DCEquation unit = new DCEquation(n);
+        input.modifyStamp(0, zero);
+        input.modifyStamp(1, unit);
+        IRealVector difference = (IRealVector) unit.getSourceVector().minus(zero.getSourceVector());
+        excitation = new double[n];
+        for (int i = 0; i < n; i++)
+            excitation[i] = difference.getValue(i);
+    }
+
+    @Override
+    public IAnalysisResults run()
+    {
+        List<Double> sweep = ACAnalysis.sweepFrequencies(subType, fStart, fEnd, points);
+        frequencies = new double[sweep.size()];
+        for (int k = 0; k < frequencies.length; k++)
+            frequencies[k] = sweep.get(k);
+        outputNoise = new double[frequencies.length];
+        inputNoise = new double[frequencies.length];
+
+        Simulator.Pool.invoke(new Chunk(0, frequencies.length));
+
+        if (Simulator.Instance.isCancelRequested()) return null;
+
+        DCResults results = new DCResults();
+        for (int k = 0; k < frequencies.length; k++)
+        {
+            IRealVector noise = activator.realVector(2);
+            noise.setValue(0, outputNoise[k]);
+            noise.setValue(1, inputNoise[k]);
+            results.addVector(frequencies[k], noise);
+        }
+        return results;
+    }
+
+    /**
+     * Solve the noise of frequency k.
+     */
+    private void solvePoint(int k)
+    {
+        if (Options.isPrintProgress()) System.out.println("NOISE solving point");
+
+        //the conjugate adjoint, conjugate(y) = inverse(conjugate(A'))*c for a real c
+        IComplexVector adjoint = equation.decompose(frequencies[k]).solveConjugateTranspose(selector);
+
+        NoiseEquation noise = new NoiseEquation(solution, adjoint);
+        for (CircuitElement element : elements)
+            element.applyNoise(noise);
+        outputNoise[k] = Math.sqrt(noise.getNoise());
+
+        //|y'*u|, with u real
+        double gainReal = 0;
+        double gainImag = 0;
+        for (int i = 0; i < excitation.length; i++)
+        {
+            if (excitation[i] == 0) continue;
+            gainReal += adjoint.getValue(i).getReal() * excitation[i];
+            gainImag += adjoint.getValue(i).getImag() * excitation[i];
+        }
+        double gain = Math.hypot(gainReal, gainImag);
+        inputNoise[k] = gain == 0 ? Double.POSITIVE_INFINITY : outputNoise[k] / gain;
+    }
+
+    /**
+     * Range of frequencies split in halves until a single frequency is left to solve.
+     */
+    private class Chunk extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+
+        Chunk(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (Simulator.Instance.isCancelRequested()) return;
+
+            if (to - from == 1)
+            {
+                solvePoint(from);
+                return;
+            }
+            if (to <= from) return;
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(from, middle), new Chunk(middle, to));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return ".NOISE " + output + " " + input.name + " " + subType + " " + points + " " + fStart + " " + fEnd;
+    }
+}
@@ -0,0 +1,118 @@
+package sriracha.simulator.solver.analysis.noise;
+
+import sriracha.math.interfaces.IComplexVector;
+import sriracha.math.interfaces.IRealVector;
+
+/**
+ * Accumulates the output noise of a circuit at one frequency.
+ *
+ * Every noise source of the circuit is a current source between two nodes, with a
+ * power spectral density S (A^2/Hz), and the sources are uncorrelated.  With the adjoint
+ * vector y solution of A'*y = c (A being the AC matrix and c selecting the output), the
+ * transfer from a current injected into node i and out of node j to the output is
+ * y(i) - y(j).  The output power spectral density is then the sum of the
+ * S*|y(i) - y(j)|^2 stamped by the elements through applyNoise, at a cost of a few
+ * operations per element instead of one AC solve per noise source.
+ */
+public class NoiseEquation
+{
+    /**
+     * Boltzmann constant, in J/K.
+     */
+    public static final double BOLTZMANN = 1.380649e-23;
+
+    /**
+     * Elementary charge, in C.
+     */
+    public static final double ELECTRON_CHARGE = 1.602176634e-19;
+
+    /**
+     * Standard temperature of the noise sources: 27 degrees Celsius, in K.
+     */
+    public static final double STD_TEMPERATURE = 300.15;
+
+    /**
+     * Operating point x, null for linear circuits.
+     */
+    private IRealVector solution;
+
+    //Adjoint vector y, real and imaginary parts
+    private double[] adjointReal;
+    private double[] adjointImag;
+
+    private double noise;
+
+    /**
+     * @param solution operating point, null for linear circuits.
+     * @param adjoint  solution of the adjoint system, or of its conjugate since only
+     *                 magnitudes are used.
+     */
+    NoiseEquation(IRealVector solution, IComplexVector adjoint)
+    {
+        this.solution = solution;
+        adjointReal = new double[adjoint.getDimension()];
+        adjointImag = new double[adjoint.getDimension()];
+        for (int i = 0; i < adjointReal.length; i++)
+        {
+            adjointReal[i] = adjoint.getValue(i).getReal();
+            adjointImag[i] = adjoint.getValue(i).getImag();
+        }
+    }
+
+    /**
+     * @return the output noise power spectral density accumulated so far, in V^2/Hz
+     * (A^2/Hz for a current output).
+     */
+    double getNoise()
+    {
+        return noise;
+    }
+
+    /**
+     * @param i matrix index, -1 for ground.
+     * @return the value of the operating point at the index, 0 for ground or linear circuits.
+     */
+    public double getSolutionValue(int i)
+    {
+        return i == -1 || solution == null ? 0 : solution.getValue(i);
+    }
+
+    /**
+     * Apply a noise current source between two nodes.
+     * Used by circuit elements.
+     *
+     * @param i       node index of one end, -1 for ground
+     * @param j       node index of the other end, -1 for ground
+     * @param density power spectral density of the current, in A^2/Hz.
+     */
+    public void applyCurrentNoise(int i, int j, double density)
+    {
+        double re = (i == -1 ? 0 : adjointReal[i]) - (j == -1 ? 0 : adjointReal[j]);
+        double im = (i == -1 ? 0 : adjointImag[i]) - (j == -1 ? 0 : adjointImag[j]);
+        noise += density * (re * re + im * im);
+    }
+
+    /**
+     * Apply the thermal noise of a conductance, 4kTG.
+     *
+     * @param i           node index of one end, -1 for ground
+     * @param j           node index of the other end, -1 for ground
+     * @param conductance conductance between the nodes.
+     */
+    public void applyThermalNoise(int i, int j, double conductance)
+    {
+        applyCurrentNoise(i, j, 4 * BOLTZMANN * STD_TEMPERATURE * Math.abs(conductance));
+    }
+
+    /**
+     * Apply the shot noise of a junction current, 2qI.
+     *
+     * @param i       node index of one end, -1 for ground
+     * @param j       node index of the other end, -1 for ground
+     * @param current current through the junction.
+     */
+    public void applyShotNoise(int i, int j, double current)
+    {
+        applyCurrentNoise(i, j, 2 * ELECTRON_CHARGE * Math.abs(current));
+    }
+}
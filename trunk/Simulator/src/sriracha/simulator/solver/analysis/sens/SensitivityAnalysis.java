@@ -0,0 +1,151 @@
+package sriracha.simulator.solver.analysis.sens;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.Simulator;
+import sriracha.simulator.model.Circuit;
+import sriracha.simulator.model.CircuitElement;
+import sriracha.simulator.solver.analysis.Analysis;
+import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
+import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.dc.OperatingPoint;
+import sriracha.simulator.solver.output.filtering.NodeInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * DC sensitivity analysis: .SENS OUTPUT
+ *
+ * Computes the derivative of one output (a node voltage, a voltage difference or the
+ * current of a voltage source) with respect to the parameter of every element of the
+ * main circuit: resistances, source values, controlled source gains and diode saturation
+ * currents.  They are reported in the order of the element names.  Instead of one
+ * perturbed simulation per element, a single adjoint solve J'*lambda = c gives all of
+ * them, each one then costing a few products with lambda (see SensitivityEquation).
+ */
+public class SensitivityAnalysis extends Analysis
+{
+    private MathActivator activator = MathActivator.Activator;
+
+    private NodeInfo output;
+
+    /**
+     * Convergence criteria of the DC operating point of non-linear circuits.
+     */
+    private ConvergenceCriteria criteria = new ConvergenceCriteria();
+
+    private Circuit circuit;
+
+    /**
+     * Linear part of the DC equation, with the small-signal conductances of the
+     * non-linear elements at the operating point: the Jacobian of the system.
+     */
+    private DCEquation equation;
+
+    /**
+     * Operating point of non-linear circuits, null for linear ones.
+     */
+    private OperatingPoint operatingPoint;
+
+    /**
+     * @param output the quantity whose sensitivities are computed.
+     */
+    public SensitivityAnalysis(NodeInfo output)
+    {
+        super(AnalysisType.SENS);
+        this.output = output;
+    }
+
+    public NodeInfo getOutput()
+    {
+        return output;
+    }
+
+    /**
+     * @param criteria convergence criteria of the DC operating point of non-linear circuits.
+     */
+    public void setConvergenceCriteria(ConvergenceCriteria criteria)
+    {
+        this.criteria = criteria;
+    }
+
+    @Override
+    public void extractSolvingInfo(Circuit circuit)
+    {
+        this.circuit = circuit;
+        equation = DCEquation.generate(circuit);
+        operatingPoint = null;
+        if (!circuit.isLinear())
+        {
+            operatingPoint = OperatingPoint.of(circuit, criteria);
+            operatingPoint.applyDC(equation);
+        }
+    }
+
+    @Override
+    public IAnalysisResults run()
+    {
+        //one factorization for both the solution of linear circuits and the adjoint
+        IRealLUDecomposition factors = equation.decompose();
+        IRealVector solution;
+        if (operatingPoint == null)
+            solution = factors.solve(equation.getSourceVector());
+        else
+            solution = operatingPoint.getSolution();
+
+        if (Simulator.Instance.isCancelRequested()) return null;
+
+        //c such that output = c'*x, output being linear in x
+        int n = solution.getDimension();
+        IRealVector selector = activator.realVector(n);
+        IRealVector unit = activator.realVector(n);
+        for (int i = 0; i < n; i++)
+        {
+            unit.setValue(i, 1);
+            selector.setValue(i, output.extractFrom(unit)[0]);
+            unit.setValue(i, 0);
+        }
+
+        IRealVector adjoint = factors.solveTranspose(selector);
+
+        SensitivityEquation sensitivityEquation = new SensitivityEquation(solution, adjoint);
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<Double> values = new ArrayList<Double>();
+        ArrayList<CircuitElement> elements = new ArrayList<CircuitElement>(circuit.getElements());
+        Collections.sort(elements, new Comparator<CircuitElement>()
+        {
+            @Override
+            public int compare(CircuitElement a, CircuitElement b)
+            {
+                return a.name.compareTo(b.name);
+            }
+        });
+        for (CircuitElement element : elements)
+        {
+            sensitivityEquation.reset();
+            element.applySensitivity(sensitivityEquation);
+            if (sensitivityEquation.isStamped())
+            {
+                names.add(element.name);
+                values.add(sensitivityEquation.getSensitivity());
+            }
+        }
+
+        IRealVector sensitivities = activator.realVector(values.size());
+        for (int k = 0; k < values.size(); k++)
+            sensitivities.setValue(k, values.get(k));
+
+        return new SensitivityResults(output.extractFrom(solution)[0], sensitivities, names);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SENS -> output: " + output;
+    }
+}
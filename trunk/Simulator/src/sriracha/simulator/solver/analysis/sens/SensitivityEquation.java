@@ -0,0 +1,122 @@
+package sriracha.simulator.solver.analysis.sens;
+
+import sriracha.math.interfaces.IRealVector;
+
+/**
+ * Accumulates the sensitivity of one output to the parameter of one element.
+ *
+ * The DC equation is R(x, p) = G(p)*x + f(x, p) - b(p) = 0, and the output is y = c'*x.
+ * With the adjoint vector lambda solution of J'*lambda = c (J being the Jacobian of the
+ * system at the operating point), the sensitivity is dy/dp = -lambda'*dR/dp.
+ * Elements stamp the derivatives of their DC stamps with respect to their parameter
+ * through applySensitivity, and the products with the adjoint vector are summed here,
+ * so no matrix is built for any parameter.
+ */
+public class SensitivityEquation
+{
+    /**
+     * Operating point x.
+     */
+    private IRealVector solution;
+
+    /**
+     * Adjoint vector lambda.
+     */
+    private IRealVector adjoint;
+
+    private double sensitivity;
+
+    private boolean stamped;
+
+    SensitivityEquation(IRealVector solution, IRealVector adjoint)
+    {
+        this.solution = solution;
+        this.adjoint = adjoint;
+    }
+
+    /**
+     * Start the sensitivity of a new parameter.
+     */
+    void reset()
+    {
+        sensitivity = 0;
+        stamped = false;
+    }
+
+    /**
+     * @return the sensitivity accumulated since the last reset.
+     */
+    double getSensitivity()
+    {
+        return sensitivity;
+    }
+
+    /**
+     * @return true if an element stamped anything since the last reset.
+     */
+    boolean isStamped()
+    {
+        return stamped;
+    }
+
+    /**
+     * @param i matrix index, -1 for ground.
+     * @return the value of the operating point at the index, 0 for ground.
+     */
+    public double getSolutionValue(int i)
+    {
+        return i == -1 ? 0 : solution.getValue(i);
+    }
+
+    /**
+     * Apply the derivative of a matrix stamp with respect to the parameter.
+     * Used by circuit elements.
+     *
+     * @param i          x matrix coordinate
+     * @param j          y matrix coordinate
+     * @param derivative derivative of the value stamped at (i, j) by applyDC.
+     */
+    public void applyMatrixSensitivity(int i, int j, double derivative)
+    {
+        stamped = true;
+
+        //no stamps to ground
+        if (i == -1 || j == -1) return;
+
+        sensitivity -= adjoint.getValue(i) * derivative * solution.getValue(j);
+    }
+
+    /**
+     * Apply the derivative of a source vector stamp with respect to the parameter.
+     * Used by circuit elements.
+     *
+     * @param i          vector coordinate
+     * @param derivative derivative of the value stamped at i by applyDC.
+     */
+    public void applySourceSensitivity(int i, double derivative)
+    {
+        stamped = true;
+
+        //no stamps to ground
+        if (i == -1) return;
+
+        sensitivity += adjoint.getValue(i) * derivative;
+    }
+
+    /**
+     * Apply the derivative of a non-linear contribution f(x) with respect to the parameter,
+     * evaluated at the operating point.  Used by non-linear circuit elements.
+     *
+     * @param i          vector coordinate
+     * @param derivative derivative of the value added at i by getNonLinContribution.
+     */
+    public void applyNonLinearSensitivity(int i, double derivative)
+    {
+        stamped = true;
+
+        //no stamps to ground
+        if (i == -1) return;
+
+        sensitivity -= adjoint.getValue(i) * derivative;
+    }
+}
@@ -0,0 +1,43 @@
+package sriracha.simulator.solver.analysis.sens;
+
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.IResultVector;
+import sriracha.simulator.solver.analysis.dc.DCResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Contains the results of a .SENS analysis: a single vector whose x value is the DC
+ * value of the output and whose entries are the sensitivities of the output to the
+ * parameter of each element, in the order of the element names.
+ */
+public class SensitivityResults implements IAnalysisResults
+{
+    private List<IResultVector> data;
+
+    private List<String> names;
+
+    public SensitivityResults(double output, IRealVector sensitivities, List<String> names)
+    {
+        data = new ArrayList<IResultVector>();
+        data.add(new DCResult(output, sensitivities));
+        this.names = names;
+    }
+
+    /**
+     * @return the names of the elements, in the order of the sensitivities.
+     */
+    public List<String> getNames()
+    {
+        return Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public List<IResultVector> getData()
+    {
+        return data;
+    }
+}
@@ -0,0 +1,159 @@
+package sriracha.simulator.solver.analysis.tf;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.Simulator;
+import sriracha.simulator.model.Circuit;
+import sriracha.simulator.model.elements.sources.Source;
+import sriracha.simulator.model.elements.sources.VoltageSource;
+import sriracha.simulator.solver.analysis.Analysis;
+import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
+import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.dc.DCResults;
+import sriracha.simulator.solver.analysis.dc.OperatingPoint;
+import sriracha.simulator.solver.output.filtering.CurrentInfo;
+import sriracha.simulator.solver.output.filtering.NodeInfo;
+
+/**
+ * DC transfer function analysis: .TF OUTPUT INPUT
+ *
+ * Computes the small-signal DC gain from an independent source to an output (a node
+ * voltage, a voltage difference or the current of a voltage source), the resistance
+ * seen by the input source and the resistance seen at the output port.  Non-linear
+ * circuits are linearized at their operating point.
+ *
+ * The matrix J is factored once.  The forward solve J*x = u, u being the change of
+ * the source vector per unit of the input, gives the gain c'*x and the input
+ * resistance.  The adjoint solve J'*y = c, c selecting the output, gives the output
+ * resistance c'*y: the voltage across the output port per unit of current injected
+ * into it.
+ */
+public class TransferFunctionAnalysis extends Analysis
+{
+    private MathActivator activator = MathActivator.Activator;
+
+    private NodeInfo output;
+
+    private Source input;
+
+    /**
+     * Convergence criteria of the DC operating point of non-linear circuits.
+     */
+    private ConvergenceCriteria criteria = new ConvergenceCriteria();
+
+    /**
+     * Linear part of the DC equation, with the small-signal conductances of the
+     * non-linear elements at the operating point: the Jacobian of the system.
+     */
+    private DCEquation equation;
+
+    /**
+     * @param output the output quantity.
+     * @param input  independent source of the main circuit driving the output.
+     */
+    public TransferFunctionAnalysis(NodeInfo output, Source input)
+    {
+        super(AnalysisType.TF);
+        this.output = output;
+        this.input = input;
+    }
+
+    public NodeInfo getOutput()
+    {
+        return output;
+    }
+
+    public Source getInput()
+    {
+        return input;
+    }
+
+    /**
+     * @param criteria convergence criteria of the DC operating point of non-linear circuits.
+     */
+    public void setConvergenceCriteria(ConvergenceCriteria criteria)
+    {
+        this.criteria = criteria;
+    }
+
+    @Override
+    public void extractSolvingInfo(Circuit circuit)
+    {
+        equation = DCEquation.generate(circuit);
+        if (!circuit.isLinear())
+            OperatingPoint.of(circuit, criteria).applyDC(equation);
+    }
+
+    @Override
+    public IAnalysisResults run()
+    {
+        int n = equation.getSourceVector().getDimension();
+        IRealLUDecomposition factors = equation.decompose();
+
+        //u, the change of the source vector per unit of the input
+        DCEquation zero = new DCEquation(n);
+        DCEquation unit = new DCEquation(n);
+        input.modifyStamp(0, zero);
+        input.modifyStamp(1, unit);
+        IRealVector excitation = (IRealVector) unit.getSourceVector().minus(zero.getSourceVector());
+
+        IRealVector response = factors.solve(excitation);
+        double gain = output.extractFrom(response)[0];
+
+        //u'*x is the voltage across a current source, or the current flowing into the
+        //positive terminal of a voltage source: minus the current it delivers
+        double inputPort = dot(excitation, response);
+        double inputResistance = input instanceof VoltageSource ? resistanceOf(-inputPort) : inputPort;
+
+        if (Simulator.Instance.isCancelRequested()) return null;
+
+        //c such that output = c'*x, output being linear in x
+        IRealVector selector = activator.realVector(n);
+        IRealVector probe = activator.realVector(n);
+        for (int i = 0; i < n; i++)
+        {
+            probe.setValue(i, 1);
+            selector.setValue(i, output.extractFrom(probe)[0]);
+            probe.setValue(i, 0);
+        }
+
+        IRealVector adjoint = factors.solveTranspose(selector);
+
+        //for a current output, c'*y is the current flowing into its voltage source per unit of voltage
+        double outputPort = dot(selector, adjoint);
+        double outputResistance = output instanceof CurrentInfo ? resistanceOf(-outputPort) : outputPort;
+
+        IRealVector resistances = activator.realVector(2);
+        resistances.setValue(0, inputResistance);
+        resistances.setValue(1, outputResistance);
+
+        DCResults results = new DCResults();
+        results.addVector(gain, resistances);
+        return results;
+    }
+
+    private static double dot(IRealVector a, IRealVector b)
+    {
+        double sum = 0;
+        for (int i = 0; i < a.getDimension(); i++)
+            sum += a.getValue(i) * b.getValue(i);
+        return sum;
+    }
+
+    /**
+     * @return the resistance of a conductance, infinite for an open port.
+     */
+    private static double resistanceOf(double conductance)
+    {
+        return conductance == 0 ? Double.POSITIVE_INFINITY : 1 / conductance;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TF -> output: " + output + " input: " + input.name;
+    }
+}
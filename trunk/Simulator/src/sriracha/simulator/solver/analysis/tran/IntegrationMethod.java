@@ -0,0 +1,17 @@
+package sriracha.simulator.solver.analysis.tran;
+
+/**
+ * Integration formula of transient analysis, set by .OPTIONS METHOD=TRAP|GEAR.
+ */
+public enum IntegrationMethod
+{
+    /**
+     * Trapezoidal rule, second order, no numerical damping.
+     */
+    Trapezoidal,
+    /**
+     * Second order backward differentiation formula (Gear-2), damps ringing
+     * the trapezoidal rule leaves on stiff circuits.
+     */
+    Gear2
+}
@@ -0,0 +1,477 @@
+package sriracha.simulator.solver.analysis.tran;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.Options;
+import sriracha.simulator.Simulator;
+import sriracha.simulator.model.Circuit;
+import sriracha.simulator.solver.analysis.Analysis;
+import sriracha.simulator.solver.analysis.AnalysisException;
+import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
+
+import java.util.ArrayList;
+
+/**
+ * Transient analysis: .TRAN TSTEP TSTOP [TSTART [TMAX]]
+ *
+ * The circuit is integrated from its DC operating point at time 0 with a variable time
+ * step.  After each step the local truncation error of every unknown is estimated from
+ * the divided differences of the last points, and the step is rejected if it exceeds
+ * TRTOL*(RELTOL*|x| + VNTOL).  The next step is sized so that the error would sit just
+ * under that tolerance: smooth regions are crossed in large steps, fast edges in small ones.
+ *
+ * Time points land on every corner of the source waveforms.  Integration restarts there
+ * with a small backward Euler step, so that the corner is not smoothed out by a formula
+ * using points on both sides of it.  Results are interpolated at every multiple of TSTEP
+ * from TSTART.
+ *
+ * Linear circuits may instead be integrated with a fixed step (see setFixedStep), in which
+ * case the companion matrix is factored once and each step is a substitution.
+ *
+ * If Newton keeps failing until the step falls below a minimum, the analysis fails with an
+ * AnalysisException rather than returning the points computed up to there.
+ */
+public class TransientAnalysis extends Analysis
+{
+    /**
+     * Transient error tolerance factor over the Newton tolerances (SPICE's TRTOL).
+     */
+    public static final double STD_TRTOL = 7;
+    /**
+     * Default maximum step, as a fraction of the simulated interval.
+     */
+    public static final double STD_MAX_STEP_FRACTION = 1.0 / 50;
+    /**
+     * Step after time 0 and after each waveform corner, as a fraction of the print step.
+     */
+    public static final double STD_INITIAL_STEP_FRACTION = 0.1;
+    /**
+     * Smallest step, as a fraction of the simulated interval, below which the analysis stops.
+     */
+    public static final double STD_MIN_STEP_FRACTION = 1e-12;
+    /**
+     * Safety factor applied to the step predicted from the error estimate.
+     */
+    public static final double STD_STEP_SAFETY = 0.9;
+    /**
+     * Largest growth of the step from one point to the next.
+     */
+    public static final double STD_MAX_STEP_GROWTH = 2;
+    /**
+     * Largest reduction of the step after a rejected point.
+     */
+    public static final double STD_MAX_STEP_SHRINK = 0.25;
+    /**
+     * Reduction of the step after Newton failed to converge.
+     */
+    public static final double STD_NEWTON_FAILURE_SHRINK = 0.125;
+
+    private MathActivator activator = MathActivator.Activator;
+
+    private TransientEquation equation;
+
+    private double printStep, stopTime, startTime, maxStep;
+
+    private IntegrationMethod method = IntegrationMethod.Trapezoidal;
+
+    /**
+     * Convergence criteria given to the non-linear equations.
+     */
+    private ConvergenceCriteria criteria = new ConvergenceCriteria();
+
+    /**
+     * Integrate linear circuits with a constant time step.
+     */
+    private boolean fixedStep = false;
+
+    //Accepted and rejected time points of the last run
+    private int acceptedCount, rejectedCount;
+
+    /**
+     * @param printStep interval between printed points (TSTEP).
+     * @param stopTime  end of the simulation (TSTOP).
+     * @param startTime time of the first printed point (TSTART).
+     * @param maxStep   largest time step, 0 for the default (TMAX).
+     */
+    public TransientAnalysis(double printStep, double stopTime, double startTime, double maxStep)
+    {
+        super(AnalysisType.TRAN);
+        this.printStep = printStep;
+        this.stopTime = stopTime;
+        this.startTime = startTime;
+        this.maxStep = maxStep > 0 ? maxStep : stopTime * STD_MAX_STEP_FRACTION;
+    }
+
+    @Override
+    public void extractSolvingInfo(Circuit circuit)
+    {
+        equation = TransientEquation.generate(circuit, criteria);
+    }
+
+    /**
+     * @param criteria convergence criteria of the non-linear solver, the error
+     *                 tolerances of the time step control also derive from them.
+     */
+    public void setConvergenceCriteria(ConvergenceCriteria criteria)
+    {
+        this.criteria = criteria;
+    }
+
+    public IntegrationMethod getMethod()
+    {
+        return method;
+    }
+
+    public void setMethod(IntegrationMethod method)
+    {
+        this.method = method;
+    }
+
+    public boolean isFixedStep()
+    {
+        return fixedStep;
+    }
+
+    /**
+     * @param fixedStep integrate linear circuits with a constant time step, the largest
+     *                  one dividing TSTEP that does not exceed TMAX.  The matrix of
+     *                  every step is then the same and is factored only once.  Non-linear
+     *                  circuits are always integrated with an adaptive step.
+     */
+    public void setFixedStep(boolean fixedStep)
+    {
+        this.fixedStep = fixedStep;
+    }
+
+    @Override
+    public IAnalysisResults run()
+    {
+        if (fixedStep && !equation.isNonLinear())
+            return runFixedStep();
+
+        TransientResults results = new TransientResults();
+        acceptedCount = 0;
+        rejectedCount = 0;
+
+        ArrayList<Double> breakpoints = equation.getBreakpoints(stopTime);
+        if (breakpoints.isEmpty() || breakpoints.get(breakpoints.size() - 1) < stopTime)
+            breakpoints.add(stopTime);
+        int nextBreakpoint = 0;
+
+        double initialStep = Math.min(printStep, maxStep) * STD_INITIAL_STEP_FRACTION;
+        double minStep = stopTime * STD_MIN_STEP_FRACTION;
+
+        //Last accepted points: times[0] is the present time, times[1] and times[2] the ones before.
+        double[] times = new double[3];
+        IRealVector[] points = new IRealVector[3];
+        points[0] = equation.solveOperatingPoint();
+        //dx/dt at the present point, zero at the operating point
+        IRealVector derivative = activator.realVector(equation.getSize());
+        //Number of points accepted since the last restart of the integration
+        int sinceRestart = 0;
+
+        int printIndex = 0;
+        if (startTime == 0)
+        {
+            results.addVector(0, points[0]);
+            printIndex = nextPrintIndex(1);
+        }
+
+        double t = 0;
+        double h = initialStep;
+        while (t < stopTime)
+        {
+            if (Simulator.Instance.isCancelRequested()) return null;
+
+            //Land on the next corner, avoiding a sliver of a step just before it.
+            double corner = breakpoints.get(nextBreakpoint);
+            boolean atCorner = false;
+            if (t + h >= corner)
+            {
+                h = corner - t;
+                atCorner = true;
+            } else if (t + 2 * h > corner)
+                h = (corner - t) / 2;
+
+            //Integration formula dx/dt = alpha*x + history
+            int order = sinceRestart == 0 ? 1 : 2;
+            double alpha;
+            IRealVector history;
+            if (order == 1)
+            {
+                alpha = 1 / h;
+                history = combine(-1 / h, points[0], 0, null);
+            } else if (method == IntegrationMethod.Trapezoidal)
+            {
+                alpha = 2 / h;
+                history = combine(-2 / h, points[0], -1, derivative);
+            } else
+            {
+                double h0 = times[0] - times[1];
+                alpha = (2 * h + h0) / (h * (h + h0));
+                history = combine(-(h + h0) / (h * h0), points[0], h / (h0 * (h + h0)), points[1]);
+            }
+
+            //Newton starts from the extrapolation of the last two points.
+            IRealVector guess = sinceRestart == 0 ? points[0] :
+                    combine(1 + h / (times[0] - times[1]), points[0], -h / (times[0] - times[1]), points[1]);
+
+            IRealVector x = equation.solveStep(t + h, alpha, history, guess);
+            if (x == null)
+            {
+                rejectedCount++;
+                h *= STD_NEWTON_FAILURE_SHRINK;
+                if (h < minStep)
+                    throw new AnalysisException("Transient analysis stopped at time " + t + ": time step too small");
+                continue;
+            }
+
+            //Local truncation error, from the divided difference of order + 1 over the points since the restart.
+            double ratio = 0;
+            if (sinceRestart > order)
+            {
+                double constant = order == 1 ? 0.5 : method == IntegrationMethod.Trapezoidal ? 1.0 / 12 : 2.0 / 9;
+                ratio = errorRatio(x, t + h, times, points, order, constant * Math.pow(h, order + 1));
+                if (ratio > 1 && h > minStep)
+                {
+                    rejectedCount++;
+                    h *= Math.max(STD_MAX_STEP_SHRINK, STD_STEP_SAFETY * Math.pow(ratio, -1.0 / (order + 1)));
+                    continue;
+                }
+            }
+
+            acceptedCount++;
+            derivative = combine(alpha, x, 1, history);
+
+            //Print the multiples of TSTEP reached by this step.
+            double tNew = atCorner ? corner : t + h;
+            while (printIndex >= 0 && printTime(printIndex) <= tNew)
+            {
+                double tp = printTime(printIndex);
+                results.addVector(tp, interpolate(tp, tNew, x, times, points, sinceRestart));
+                printIndex = nextPrintIndex(printIndex + 1);
+            }
+
+            times[2] = times[1];
+            times[1] = times[0];
+            times[0] = tNew;
+            points[2] = points[1];
+            points[1] = points[0];
+            points[0] = x;
+            t = tNew;
+            sinceRestart++;
+
+            if (atCorner)
+            {
+                nextBreakpoint++;
+                sinceRestart = 0;
+                h = initialStep;
+            } else
+            {
+                double growth = ratio == 0 ? STD_MAX_STEP_GROWTH :
+                        Math.min(STD_MAX_STEP_GROWTH, STD_STEP_SAFETY * Math.pow(ratio, -1.0 / (order + 1)));
+                h = Math.min(h * growth, maxStep);
+            }
+        }
+
+        if (Options.isPrintProgress())
+            System.out.println("TRAN accepted time points: " + acceptedCount + ", rejected: " + rejectedCount);
+
+        return results;
+    }
+
+    /**
+     * Constant step integration of a linear circuit.  The matrix G + alpha*C is factored
+     * once for the selected formula, and once for backward Euler, which is used on the
+     * first step and on every step containing a waveform corner.  There is no error
+     * control: the accuracy is set by the step alone.
+     */
+    private IAnalysisResults runFixedStep()
+    {
+        TransientResults results = new TransientResults();
+        acceptedCount = 0;
+        rejectedCount = 0;
+
+        int stepsPerPrint = (int) Math.ceil(printStep / Math.min(printStep, maxStep) - 1e-9);
+        double h = printStep / stepsPerPrint;
+        long stepCount = (long) Math.ceil(stopTime / h - 1e-9);
+
+        ArrayList<Double> breakpoints = equation.getBreakpoints(stopTime);
+        int nextBreakpoint = 0;
+
+        double alpha = method == IntegrationMethod.Trapezoidal ? 2 / h : 3 / (2 * h);
+        IRealLUDecomposition factors = equation.factorStep(alpha);
+        IRealLUDecomposition eulerFactors = null;
+
+        double[] times = new double[3];
+        IRealVector[] points = new IRealVector[3];
+        points[0] = equation.solveOperatingPoint();
+        IRealVector derivative = activator.realVector(equation.getSize());
+        int sinceRestart = 0;
+
+        int printIndex = 0;
+        if (startTime == 0)
+        {
+            results.addVector(0, points[0]);
+            printIndex = nextPrintIndex(1);
+        }
+
+        for (long step = 1; step <= stepCount; step++)
+        {
+            if (Simulator.Instance.isCancelRequested()) return null;
+
+            double t = times[0];
+            double tNew = Math.min(step * h, stopTime);
+            //Only the last step can be shorter, when TSTOP is not a multiple of the step.
+            boolean shortStep = tNew - t < h * (1 - 1e-9);
+
+            //A corner at the end of the step only affects the next one.
+            boolean corner = false;
+            while (nextBreakpoint < breakpoints.size() && breakpoints.get(nextBreakpoint) < tNew - h * 1e-9)
+            {
+                corner = true;
+                nextBreakpoint++;
+            }
+
+            //Backward Euler when there is no point to start the formula from, or across a corner.
+            IRealVector history;
+            IRealVector x;
+            if (sinceRestart == 0 || corner || shortStep)
+            {
+                double alphaEuler = shortStep ? 1 / (tNew - t) : 1 / h;
+                if (shortStep || eulerFactors == null)
+                    eulerFactors = equation.factorStep(alphaEuler);
+                history = combine(-alphaEuler, points[0], 0, null);
+                x = eulerFactors.solve(equation.stepSourceVector(tNew, history));
+                derivative = combine(alphaEuler, x, 1, history);
+                sinceRestart = 0;
+            } else
+            {
+                if (method == IntegrationMethod.Trapezoidal)
+                    history = combine(-2 / h, points[0], -1, derivative);
+                else
+                    history = combine(-2 / h, points[0], 1 / (2 * h), points[1]);
+                x = factors.solve(equation.stepSourceVector(tNew, history));
+                derivative = combine(alpha, x, 1, history);
+            }
+            acceptedCount++;
+
+            while (printIndex >= 0 && printTime(printIndex) <= tNew)
+            {
+                double tp = printTime(printIndex);
+                results.addVector(tp, interpolate(tp, tNew, x, times, points, sinceRestart));
+                printIndex = nextPrintIndex(printIndex + 1);
+            }
+
+            times[2] = times[1];
+            times[1] = times[0];
+            times[0] = tNew;
+            points[2] = points[1];
+            points[1] = points[0];
+            points[0] = x;
+            sinceRestart++;
+        }
+
+        if (Options.isPrintProgress())
+            System.out.println("TRAN fixed time steps: " + acceptedCount);
+
+        return results;
+    }
+
+    /**
+     * @return the time of the printed point of the given index.
+     */
+    private double printTime(int index)
+    {
+        return Math.min(startTime + index * printStep, stopTime);
+    }
+
+    /**
+     * @return the index of the next printed point from the given one, -1 past the stop time.
+     */
+    private int nextPrintIndex(int index)
+    {
+        //Tolerate the rounding of startTime + index*printStep at the stop time.
+        return startTime + index * printStep <= stopTime * (1 + 1e-9) ? index : -1;
+    }
+
+    /**
+     * Ratio of the largest local truncation error estimate over its tolerance.
+     * The derivative of order + 1 is estimated as (order + 1)! times the divided difference
+     * over the new point and the order + 1 last points.
+     *
+     * @param scale error constant of the formula times h^(order + 1).
+     */
+    private double errorRatio(IRealVector x, double time, double[] times, IRealVector[] points, int order, double scale)
+    {
+        int count = order + 2;
+        double[] t = new double[count];
+        t[0] = time;
+        for (int k = 1; k < count; k++)
+            t[k] = times[k - 1];
+
+        double factorial = order == 1 ? 2 : 6;
+        double ratio = 0;
+        double[] dd = new double[count];
+        for (int i = 0; i < x.getDimension(); i++)
+        {
+            dd[0] = x.getValue(i);
+            for (int k = 1; k < count; k++)
+                dd[k] = points[k - 1].getValue(i);
+            for (int level = 1; level < count; level++)
+                for (int k = 0; k < count - level; k++)
+                    dd[k] = (dd[k] - dd[k + 1]) / (t[k] - t[k + level]);
+
+            double error = scale * factorial * Math.abs(dd[0]);
+            double tolerance = STD_TRTOL * (criteria.getReltol() *
+                    Math.max(Math.abs(x.getValue(i)), Math.abs(points[0].getValue(i))) + criteria.getVntol());
+            ratio = Math.max(ratio, error / tolerance);
+        }
+        return ratio;
+    }
+
+    /**
+     * Interpolate the solution at tp, between the present point and the new one.
+     * The interpolation is quadratic through the point before as well, unless the
+     * integration was just restarted at a corner.
+     */
+    private IRealVector interpolate(double tp, double tNew, IRealVector x, double[] times, IRealVector[] points,
+                                    int sinceRestart)
+    {
+        if (tp == tNew)
+            return x;
+
+        double t0 = times[0];
+        if (sinceRestart == 0)
+            return combine((tp - t0) / (tNew - t0), x, (tNew - tp) / (tNew - t0), points[0]);
+
+        //Lagrange basis over (tNew, t0, t1)
+        double t1 = times[1];
+        double lNew = (tp - t0) * (tp - t1) / ((tNew - t0) * (tNew - t1));
+        double l0 = (tp - tNew) * (tp - t1) / ((t0 - tNew) * (t0 - t1));
+        double l1 = (tp - tNew) * (tp - t0) / ((t1 - tNew) * (t1 - t0));
+        IRealVector result = combine(lNew, x, l0, points[0]);
+        return combine(1, result, l1, points[1]);
+    }
+
+    /**
+     * @return a*u + b*v, v may be null if b is 0.
+     */
+    private IRealVector combine(double a, IRealVector u, double b, IRealVector v)
+    {
+        IRealVector result = activator.realVector(u.getDimension());
+        for (int i = 0; i < u.getDimension(); i++)
+            result.setValue(i, a * u.getValue(i) + (b == 0 ? 0 : b * v.getValue(i)));
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TRAN -> step: " + printStep + " stop: " + stopTime + " start: " + startTime
+                + " max step: " + maxStep + " method: " + method + (fixedStep ? " fixed step" : "");
+    }
+}
@@ -0,0 +1,318 @@
+package sriracha.simulator.solver.analysis.tran;
+
+import sriracha.math.MathActivator;
+import sriracha.math.interfaces.IRealLUDecomposition;
+import sriracha.math.interfaces.IRealMatrix;
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.model.Circuit;
+import sriracha.simulator.model.CircuitElement;
+import sriracha.simulator.model.elements.sources.Source;
+import sriracha.simulator.solver.analysis.dc.ConvergenceCriteria;
+import sriracha.simulator.solver.analysis.dc.DCEquation;
+import sriracha.simulator.solver.analysis.dc.DCNonLinEquation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Equation of transient analysis: G*x + C*dx/dt + f(x) = b(t).
+ * The resistive part G, f(x) and b is the DC equation of the circuit, C holds the
+ * capacitances and inductances stamped by the reactive elements through applyTransient.
+ *
+ * Each time step replaces dx/dt by an integration formula dx/dt = alpha*x + h, where h
+ * only depends on the past points.  Every capacitor and inductor then becomes its
+ * companion model, the conductance alpha*C in parallel with the source -C*h, which is
+ * stamped into a copy of the DC equation together with the source values at the new time.
+ */
+public class TransientEquation
+{
+    private MathActivator activator = MathActivator.Activator;
+
+    /**
+     * DC equation of the circuit, the sources at their dc values.
+     */
+    private DCEquation resistive;
+
+    private IRealMatrix C;
+
+    //Non-zero entries of C
+    private int[] rows;
+    private int[] columns;
+    private double[] values;
+
+    /**
+     * Sources with a waveform.
+     */
+    private ArrayList<Source> sources;
+
+    /**
+     * Source vector of the circuit with every waveform source at 0, and the non-zero
+     * entries of the change of the source vector per unit of each waveform source
+     * (unitRows[k] and unitValues[k] for sources[k]).
+     * Only built for linear circuits, which can then be stepped without copying G.
+     */
+    private IRealVector sourceBase;
+    private int[][] unitRows;
+    private double[][] unitValues;
+
+    private TransientEquation(int size)
+    {
+        C = activator.realMatrix(size, size);
+        sources = new ArrayList<Source>();
+    }
+
+    /**
+     * This method acts as the official constructor of TransientEquation objects.
+     * The method applies the DC and transient stamps of the circuit elements.
+     * Only the waveforms of sources of the main circuit are followed, sources inside
+     * subcircuits keep their dc value.
+     *
+     * @param circuit  Target circuit object from which circuit elements are obtained.
+     *                 It is expected to have already been set up with all the
+     *                 extra variables present.
+     * @param criteria convergence criteria of the non-linear solver.
+     * @return the new equation.
+     */
+    public static TransientEquation generate(Circuit circuit, ConvergenceCriteria criteria)
+    {
+        TransientEquation equation = new TransientEquation(circuit.getMatrixSize());
+
+        if (circuit.isLinear())
+            equation.resistive = DCEquation.generate(circuit);
+        else
+        {
+            DCNonLinEquation nonLinEquation = (DCNonLinEquation) DCNonLinEquation.generate(circuit);
+            nonLinEquation.setConvergenceCriteria(criteria);
+            equation.resistive = nonLinEquation;
+        }
+
+        for (CircuitElement element : circuit.getElements())
+        {
+            element.applyTransient(equation);
+            if (element instanceof Source && ((Source) element).getWaveform() != null)
+                equation.sources.add((Source) element);
+        }
+
+        equation.collectEntries();
+        if (!equation.isNonLinear())
+            equation.collectSources();
+        return equation;
+    }
+
+    /**
+     * Keep the non-zero entries of C in arrays, the only ones companion models stamp.
+     */
+    private void collectEntries()
+    {
+        int n = C.getNumberOfRows();
+        int count = 0;
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                if (C.getValue(i, j) != 0) count++;
+
+        rows = new int[count];
+        columns = new int[count];
+        values = new double[count];
+        int k = 0;
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                if (C.getValue(i, j) != 0)
+                {
+                    rows[k] = i;
+                    columns[k] = j;
+                    values[k++] = C.getValue(i, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Split the source vector into its constant part and the contributions of the
+     * waveform sources, which are linear in their values.
+     */
+    private void collectSources()
+    {
+        sourceBase = resistive.getSourceVector();
+        unitRows = new int[sources.size()][];
+        unitValues = new double[sources.size()][];
+        for (int k = 0; k < sources.size(); k++)
+        {
+            DCEquation zero = new DCEquation(getSize());
+            DCEquation unit = new DCEquation(getSize());
+            sources.get(k).modifyStamp(0, zero);
+            sources.get(k).modifyStamp(1, unit);
+            IRealVector offset = zero.getSourceVector();
+            IRealVector slope = (IRealVector) unit.getSourceVector().minus(offset);
+            sourceBase = (IRealVector) sourceBase.plus(offset);
+
+            int count = 0;
+            for (int i = 0; i < slope.getDimension(); i++)
+                if (slope.getValue(i) != 0) count++;
+            unitRows[k] = new int[count];
+            unitValues[k] = new double[count];
+            count = 0;
+            for (int i = 0; i < slope.getDimension(); i++)
+            {
+                if (slope.getValue(i) != 0)
+                {
+                    unitRows[k][count] = i;
+                    unitValues[k][count++] = slope.getValue(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply a capacitance or inductance stamp to the C matrix.
+     * Used by circuit elements.
+     *
+     * @param i x matrix coordinate
+     * @param j y matrix coordinate
+     * @param value
+     */
+    public void applyMatrixStamp(int i, int j, double value)
+    {
+        //no stamps to ground
+        if (i == -1 || j == -1) return;
+
+        if (value != 0)
+            C.addValue(i, j, value);
+    }
+
+    /**
+     * @return the number of unknowns.
+     */
+    public int getSize()
+    {
+        return C.getNumberOfRows();
+    }
+
+    /**
+     * @return true if the circuit has non-linear elements.
+     */
+    public boolean isNonLinear()
+    {
+        return resistive instanceof DCNonLinEquation;
+    }
+
+    /**
+     * Times at which a source waveform has a corner.
+     *
+     * @param stopTime end of the simulated interval.
+     * @return the corner times in (0, stopTime], in increasing order.
+     */
+    public ArrayList<Double> getBreakpoints(double stopTime)
+    {
+        ArrayList<Double> breakpoints = new ArrayList<Double>();
+        for (Source source : sources)
+        {
+            for (double t : source.getWaveform().getBreakpoints(stopTime))
+            {
+                if (t > 0 && !breakpoints.contains(t))
+                    breakpoints.add(t);
+            }
+        }
+        Collections.sort(breakpoints);
+        return breakpoints;
+    }
+
+    /**
+     * @return C*v
+     */
+    public IRealVector reactiveProduct(IRealVector v)
+    {
+        IRealVector result = activator.realVector(v.getDimension());
+        for (int k = 0; k < values.length; k++)
+            result.addValue(rows[k], values[k] * v.getValue(columns[k]));
+        return result;
+    }
+
+    /**
+     * @return the DC equation with the sources at their values at the given time.
+     */
+    private DCEquation resistiveAt(double time)
+    {
+        DCEquation equation = resistive.clone();
+        for (Source source : sources)
+            source.modifyStamp(source.getValue(time), equation);
+        return equation;
+    }
+
+    /**
+     * Solve the DC operating point at time 0, capacitors open and inductors shorted.
+     *
+     * @return the initial point of the transient analysis.
+     */
+    public IRealVector solveOperatingPoint()
+    {
+        return resistiveAt(0).solve();
+    }
+
+    /**
+     * Factor the companion matrix G + alpha*C of a linear circuit.  While the time step
+     * and the integration formula stay the same, so does the matrix, and each step only
+     * needs the right-hand side of stepSourceVector and a forward and back substitution.
+     *
+     * @param alpha coefficient of x in the integration formula.
+     * @return the LU factors of G + alpha*C.
+     */
+    public IRealLUDecomposition factorStep(double alpha)
+    {
+        DCEquation equation = resistive.clone();
+        for (int k = 0; k < values.length; k++)
+            equation.applyMatrixStamp(rows[k], columns[k], alpha * values[k]);
+        return equation.decompose();
+    }
+
+    /**
+     * Right-hand side of a step of a linear circuit: b(time) - C*history.
+     *
+     * @param time    time of the new point.
+     * @param history the part of the integration formula given by the past points.
+     * @return the right-hand side, to be solved with the factors of factorStep.
+     */
+    public IRealVector stepSourceVector(double time, IRealVector history)
+    {
+        IRealVector rhs = sourceBase.clone();
+        for (int k = 0; k < unitRows.length; k++)
+        {
+            double value = sources.get(k).getValue(time);
+            for (int i = 0; i < unitRows[k].length; i++)
+                rhs.addValue(unitRows[k][i], value * unitValues[k][i]);
+        }
+        for (int k = 0; k < values.length; k++)
+            rhs.addValue(rows[k], -values[k] * history.getValue(columns[k]));
+        return rhs;
+    }
+
+    /**
+     * Solve the companion system of one time step:
+     * (G + alpha*C)*x + f(x) = b(time) - C*history.
+     *
+     * @param time    time of the new point.
+     * @param alpha   coefficient of x in the integration formula.
+     * @param history the part of the integration formula given by the past points.
+     * @param guess   starting point of Newton for non-linear circuits.
+     * @return the new point, null if Newton did not converge.
+     */
+    public IRealVector solveStep(double time, double alpha, IRealVector history, IRealVector guess)
+    {
+        DCEquation equation = resistiveAt(time);
+        IRealVector companionSource = reactiveProduct(history);
+        for (int k = 0; k < values.length; k++)
+            equation.applyMatrixStamp(rows[k], columns[k], alpha * values[k]);
+        for (int i = 0; i < companionSource.getDimension(); i++)
+            equation.applySourceVectorStamp(i, -companionSource.getValue(i));
+
+        if (equation instanceof DCNonLinEquation)
+        {
+            IRealVector answer = activator.realVector(guess.getDimension());
+            if (((DCNonLinEquation) equation).solveFrom(guess, answer) == -1)
+                return null;
+            return answer;
+        }
+        return equation.solve();
+    }
+}
@@ -0,0 +1,36 @@
+package sriracha.simulator.solver.analysis.tran;
+
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.solver.analysis.IResultVector;
+
+/**
+ * Solution vector of a transient analysis at one time point.
+ */
+public class TransientResult implements IResultVector
+{
+    private double time;
+    private IRealVector vector;
+
+    public TransientResult(double time, IRealVector vector)
+    {
+        this.time = time;
+        this.vector = vector;
+    }
+
+    public double getTime()
+    {
+        return time;
+    }
+
+    @Override
+    public double getX()
+    {
+        return time;
+    }
+
+    @Override
+    public IRealVector getData()
+    {
+        return vector;
+    }
+}
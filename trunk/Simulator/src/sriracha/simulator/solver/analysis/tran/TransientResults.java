@@ -0,0 +1,34 @@
+package sriracha.simulator.solver.analysis.tran;
+
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.IResultVector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contains the results for a specific .TRAN analysis request
+ */
+public class TransientResults implements IAnalysisResults
+{
+    private List<IResultVector> data;
+
+    public TransientResults()
+    {
+        data = new ArrayList<IResultVector>();
+    }
+
+    public void addVector(double time, IRealVector vector)
+    {
+        data.add(new TransientResult(time, vector));
+    }
+
+
+    @Override
+    public List<IResultVector> getData()
+    {
+        return data;
+    }
+
+}
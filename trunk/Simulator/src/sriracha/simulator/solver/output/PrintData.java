@@ -20,6 +20,11 @@ public class PrintData implements IPrintData
 
     private ArrayList<String> labels;
 
+    /**
+     * Line identifying the results, such as the step of a parametric sweep, null if none.
+     */
+    private String title;
+
     public PrintData()
     {
         data = new ArrayList<IDataPoint>();
@@ -48,12 +53,27 @@ public class PrintData implements IPrintData
         labels.add(label);
     }
 
+    public String getTitle()
+    {
+        return title;
+    }
+
+    public void setTitle(String title)
+    {
+        this.title = title;
+    }
+
 
     @Override
     public String toString()
     {
         StringBuilder sb = new StringBuilder();
 
+        if (title != null)
+        {
+            sb.append(title);
+            sb.append("\n");
+        }
 
         for (String lbl : labels)
         {
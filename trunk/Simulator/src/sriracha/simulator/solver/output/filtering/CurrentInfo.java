@@ -27,12 +27,18 @@ public class CurrentInfo extends NodeInfo
 
     @Override
     public double[] extractFrom(IComplexVector data)
+    {
+        IComplex val = extractPhasor(data);
+        if (val == null) return null;
+        return getFromType(val);
+    }
+
+    @Override
+    public IComplex extractPhasor(IComplexVector data)
     {
         VoltageSource vs = (VoltageSource) circuit.getElement(sourceName);
         if (vs == null) return null;
-        int index = vs.getCurrentVarIndex();
-        IComplex val = data.getValue(index);
-        return getFromType(val);
+        return data.getValue(vs.getCurrentVarIndex());
     }
 
     @Override
@@ -0,0 +1,51 @@
+package sriracha.simulator.solver.output.filtering;
+
+import sriracha.simulator.solver.analysis.AnalysisType;
+
+/**
+ * Bounds of a quantity in Monte Carlo analysis, set by a .LIMIT line:
+ * .LIMIT DC|AC|TRAN quantity lower upper
+ * A trial meets the limit if the quantity stays within the bounds at every
+ * point of the analysis.  The filter itself extracts the quantity like a .PRINT
+ * statement of that single quantity.
+ */
+public class LimitFilter extends OutputFilter
+{
+
+    private double lower;
+
+    private double upper;
+
+    public LimitFilter(AnalysisType analysisType, NodeInfo quantity, double lower, double upper)
+    {
+        super(analysisType);
+        addData(quantity);
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    public double getLower()
+    {
+        return lower;
+    }
+
+    public double getUpper()
+    {
+        return upper;
+    }
+
+    /**
+     * @param value value of the quantity at a point.
+     * @return true if the value is within the bounds.
+     */
+    public boolean accepts(double value)
+    {
+        return value >= lower && value <= upper;
+    }
+
+    @Override
+    public String toString()
+    {
+        return ".LIMIT " + getAnalysisType() + " " + getRequestedInfo().get(0) + " " + lower + " " + upper;
+    }
+}
@@ -0,0 +1,63 @@
+package sriracha.simulator.solver.output.filtering;
+
+import sriracha.math.interfaces.IComplex;
+import sriracha.math.interfaces.IComplexVector;
+import sriracha.math.interfaces.IRealVector;
+
+/**
+ * Represents one entry of the parameter matrix computed by a network analysis,
+ * whose result vectors hold the matrix row by row.
+ * Rows and columns are numbered from 1, like the ports.
+ */
+public class NetworkParameterInfo extends NodeInfo
+{
+    private char parameter;
+
+    private int row, column;
+
+    private int portCount;
+
+    /**
+     * @param parameter letter of the parameter matrix (Z, Y or S).
+     * @param row       output port, from 1.
+     * @param column    driven port, from 1.
+     * @param portCount number of ports of the analysis.
+     */
+    public NetworkParameterInfo(NodeDataFormat format, char parameter, int row, int column, int portCount)
+    {
+        super(format);
+        this.parameter = parameter;
+        this.row = row;
+        this.column = column;
+        this.portCount = portCount;
+    }
+
+    private int getIndex()
+    {
+        return (row - 1) * portCount + column - 1;
+    }
+
+    @Override
+    public double[] extractFrom(IComplexVector data)
+    {
+        return getFromType(extractPhasor(data));
+    }
+
+    @Override
+    public IComplex extractPhasor(IComplexVector data)
+    {
+        return data.getValue(getIndex());
+    }
+
+    @Override
+    public double[] extractFrom(IRealVector data)
+    {
+        return new double[]{data.getValue(getIndex())};
+    }
+
+    @Override
+    public String toString()
+    {
+        return parameter + getFormatName(format) + "(" + row + "," + column + ")";
+    }
+}
@@ -30,6 +30,14 @@ public abstract class NodeInfo
 
     public abstract double[] extractFrom(IComplexVector data);
 
+    /**
+     * Extracts the raw phasor this NodeInfo refers to, regardless of the
+     * requested output format.
+     * @param data complex solution vector
+     * @return the phasor value, or null if it cannot be found
+     */
+    public abstract IComplex extractPhasor(IComplexVector data);
+
     public abstract double[] extractFrom(IRealVector data);
 
     protected double[] getFromType(IComplex val)
@@ -0,0 +1,49 @@
+package sriracha.simulator.solver.output.filtering;
+
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.IPrintData;
+import sriracha.simulator.model.elements.sources.Source;
+import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.IResultVector;
+import sriracha.simulator.solver.output.FilteredVector;
+import sriracha.simulator.solver.output.PrintData;
+
+/**
+ * Output of a .NOISE analysis, added along with the analysis.
+ * For each frequency, the noise at the output and the same noise referred
+ * to the input, both per square root of Hz.
+ */
+public class NoiseFilter extends OutputFilter
+{
+
+    private String inputName;
+
+    public NoiseFilter(NodeInfo output, Source input)
+    {
+        super(AnalysisType.NOISE);
+        addData(output);
+        inputName = input.name;
+    }
+
+    @Override
+    public IPrintData filterResults(IAnalysisResults results)
+    {
+        PrintData data = new PrintData();
+        data.addLabel("freq(hz)");
+        data.addLabel("ONOISE(" + getRequestedInfo().get(0) + ")");
+        data.addLabel("INOISE(" + inputName + ")");
+
+        for (IResultVector vector : results.getData())
+        {
+            IRealVector values = (IRealVector) vector.getData();
+            FilteredVector fVector = new FilteredVector(values.getDimension());
+            fVector.setX(vector.getX());
+            for (int i = 0; i < values.getDimension(); i++)
+                fVector.put(i, new double[]{values.getValue(i)});
+
+            data.addResult(fVector);
+        }
+        return data;
+    }
+}
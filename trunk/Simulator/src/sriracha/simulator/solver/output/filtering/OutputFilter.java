@@ -8,6 +8,8 @@ import sriracha.simulator.solver.output.FilteredVector;
 import sriracha.simulator.solver.output.PrintData;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class OutputFilter
 {
@@ -45,6 +47,14 @@ public class OutputFilter
         return analysisType;
     }
 
+    /**
+     * @return read-only list of the quantities requested by this filter
+     */
+    public List<NodeInfo> getRequestedInfo()
+    {
+        return Collections.unmodifiableList(requestedInfo);
+    }
+
     @Override
     public String toString()
     {
@@ -56,9 +66,12 @@ public class OutputFilter
         switch (analysis)
         {
             case AC:
+            case NET:
                 return "freq(hz)";
             case DC:
                 return "Volts";
+            case TRAN:
+                return "Time(s)";
             default:
                 return null;
         }
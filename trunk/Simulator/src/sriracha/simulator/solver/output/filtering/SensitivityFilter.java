@@ -0,0 +1,48 @@
+package sriracha.simulator.solver.output.filtering;
+
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.IPrintData;
+import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.IResultVector;
+import sriracha.simulator.solver.analysis.sens.SensitivityResults;
+import sriracha.simulator.solver.output.FilteredVector;
+import sriracha.simulator.solver.output.PrintData;
+
+/**
+ * Output of a .SENS analysis, added along with the analysis.
+ * The x value is the output of the analysis, and there is one column per element
+ * holding the sensitivity of the output to the parameter of that element.
+ */
+public class SensitivityFilter extends OutputFilter
+{
+
+    public SensitivityFilter(NodeInfo output)
+    {
+        super(AnalysisType.SENS);
+        addData(output);
+    }
+
+    @Override
+    public IPrintData filterResults(IAnalysisResults results)
+    {
+        SensitivityResults sensitivities = (SensitivityResults) results;
+
+        PrintData data = new PrintData();
+        data.addLabel(getRequestedInfo().get(0).toString());
+        for (String name : sensitivities.getNames())
+            data.addLabel(name);
+
+        for (IResultVector vector : results.getData())
+        {
+            IRealVector values = (IRealVector) vector.getData();
+            FilteredVector fVector = new FilteredVector(values.getDimension());
+            fVector.setX(vector.getX());
+            for (int i = 0; i < values.getDimension(); i++)
+                fVector.put(i, new double[]{values.getValue(i)});
+
+            data.addResult(fVector);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,51 @@
+package sriracha.simulator.solver.output.filtering;
+
+import sriracha.math.interfaces.IRealVector;
+import sriracha.simulator.IPrintData;
+import sriracha.simulator.model.elements.sources.Source;
+import sriracha.simulator.solver.analysis.AnalysisType;
+import sriracha.simulator.solver.analysis.IAnalysisResults;
+import sriracha.simulator.solver.analysis.IResultVector;
+import sriracha.simulator.solver.output.FilteredVector;
+import sriracha.simulator.solver.output.PrintData;
+
+/**
+ * Output of a .TF analysis, added along with the analysis.
+ * The x value is the gain from the input to the output, followed by the
+ * input resistance and the output resistance.
+ */
+public class TransferFunctionFilter extends OutputFilter
+{
+
+    private String inputName;
+
+    public TransferFunctionFilter(NodeInfo output, Source input)
+    {
+        super(AnalysisType.TF);
+        addData(output);
+        inputName = input.name;
+    }
+
+    @Override
+    public IPrintData filterResults(IAnalysisResults results)
+    {
+        String output = getRequestedInfo().get(0).toString();
+
+        PrintData data = new PrintData();
+        data.addLabel(output + "/" + inputName);
+        data.addLabel("RIN(" + inputName + ")");
+        data.addLabel("ROUT(" + output + ")");
+
+        for (IResultVector vector : results.getData())
+        {
+            IRealVector values = (IRealVector) vector.getData();
+            FilteredVector fVector = new FilteredVector(values.getDimension());
+            fVector.setX(vector.getX());
+            for (int i = 0; i < values.getDimension(); i++)
+                fVector.put(i, new double[]{values.getValue(i)});
+
+            data.addResult(fVector);
+        }
+        return data;
+    }
+}
@@ -29,10 +29,14 @@ public class VoltageInfo extends NodeInfo
     @Override
     public double[] extractFrom(IComplexVector data)
     {
-        IComplex val = nodeMinus == -1 ? data.getValue(nodePlus) :
-                data.getValue(nodePlus).minus(data.getValue(nodeMinus));
-        return getFromType(val);
+        return getFromType(extractPhasor(data));
+    }
 
+    @Override
+    public IComplex extractPhasor(IComplexVector data)
+    {
+        return nodeMinus == -1 ? data.getValue(nodePlus) :
+                data.getValue(nodePlus).minus(data.getValue(nodeMinus));
     }
 
     @Override